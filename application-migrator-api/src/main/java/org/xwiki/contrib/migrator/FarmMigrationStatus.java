@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The aggregated status of migrations applied on every wiki of the farm through
+ * {@link MigrationManager#applyMigrationsOnFarm(org.xwiki.extension.ExtensionId, int)}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class FarmMigrationStatus
+{
+    private final Map<String, Map<String, MigrationStatus>> migrationStatuses = new ConcurrentHashMap<>();
+
+    private final Map<String, String> failedWikis = new ConcurrentHashMap<>();
+
+    private final Set<String> canceledWikis = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Define the statuses of the migrations applied on the given wiki.
+     *
+     * @param wikiId the wiki
+     * @param wikiMigrationStatuses the status of each migration applied on the wiki, indexed by migration UUID
+     */
+    public void setMigrationStatuses(String wikiId, Map<String, MigrationStatus> wikiMigrationStatuses)
+    {
+        migrationStatuses.put(wikiId, wikiMigrationStatuses);
+    }
+
+    /**
+     * Mark the migrations of the given wiki as failed before any migration status could be computed, for example
+     * because the available migrations could not be listed.
+     *
+     * @param wikiId the wiki
+     * @param message an explicative message
+     */
+    public void setFailedWiki(String wikiId, String message)
+    {
+        failedWikis.put(wikiId, message);
+    }
+
+    /**
+     * Mark the migrations of the given wiki as canceled before being started.
+     *
+     * @param wikiId the wiki
+     */
+    public void setCanceledWiki(String wikiId)
+    {
+        canceledWikis.add(wikiId);
+    }
+
+    /**
+     * @return for each wiki on which migrations have been applied, the status of each migration indexed by migration
+     * UUID
+     */
+    public Map<String, Map<String, MigrationStatus>> getMigrationStatuses()
+    {
+        return Collections.unmodifiableMap(migrationStatuses);
+    }
+
+    /**
+     * @return the wikis on which the migrations could not be applied at all, along with the cause of the failure
+     */
+    public Map<String, String> getFailedWikis()
+    {
+        return Collections.unmodifiableMap(failedWikis);
+    }
+
+    /**
+     * @return the wikis on which the migrations have been canceled before being started
+     */
+    public Set<String> getCanceledWikis()
+    {
+        return Collections.unmodifiableSet(canceledWikis);
+    }
+
+    /**
+     * @return {@link MigrationStatus.Status#FAILURE} if any migration failed on any wiki,
+     * {@link MigrationStatus.Status#CANCELED} if some migrations have been canceled and
+     * {@link MigrationStatus.Status#SUCCESS} if every migration has been applied on every wiki
+     */
+    public MigrationStatus.Status getStatus()
+    {
+        boolean canceled = !canceledWikis.isEmpty();
+
+        if (!failedWikis.isEmpty()) {
+            return MigrationStatus.Status.FAILURE;
+        }
+
+        for (Map<String, MigrationStatus> wikiMigrationStatuses : migrationStatuses.values()) {
+            for (MigrationStatus migrationStatus : wikiMigrationStatuses.values()) {
+                if (migrationStatus == null || MigrationStatus.Status.FAILURE.equals(migrationStatus.getStatus())) {
+                    return MigrationStatus.Status.FAILURE;
+                }
+                canceled |= MigrationStatus.Status.CANCELED.equals(migrationStatus.getStatus());
+            }
+        }
+
+        return canceled ? MigrationStatus.Status.CANCELED : MigrationStatus.Status.SUCCESS;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator;
+
+/**
+ * The progress of a migration that has been interrupted before the end, allowing to resume it where it stopped.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class MigrationCheckpoint
+{
+    private final String lastKey;
+
+    private final long processedCount;
+
+    /**
+     * Builds a new {@link MigrationCheckpoint}.
+     *
+     * @param lastKey the key of the last element processed by the migration, the elements being processed in the
+     * order of their key
+     * @param processedCount the number of elements processed so far
+     */
+    public MigrationCheckpoint(String lastKey, long processedCount)
+    {
+        this.lastKey = lastKey;
+        this.processedCount = processedCount;
+    }
+
+    /**
+     * @return the key of the last element processed by the migration
+     */
+    public String getLastKey()
+    {
+        return lastKey;
+    }
+
+    /**
+     * @return the number of elements processed so far
+     */
+    public long getProcessedCount()
+    {
+        return processedCount;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Persists the progress of the migrations being executed, so that a migration interrupted before the end (for example
+ * by a restart of the wiki) can resume where it stopped instead of starting over.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Role
+public interface MigrationCheckpointStore
+{
+    /**
+     * @param migrationDescriptor the migration
+     * @return the last checkpoint saved for the given migration in the current wiki, or null if there is none
+     * @throws MigrationException if an error happens
+     */
+    MigrationCheckpoint getCheckpoint(AbstractMigrationDescriptor migrationDescriptor) throws MigrationException;
+
+    /**
+     * Save the progress of the given migration in the current wiki, replacing any previous checkpoint.
+     *
+     * @param migrationDescriptor the migration
+     * @param checkpoint the progress of the migration
+     * @throws MigrationException if an error happens
+     */
+    void saveCheckpoint(AbstractMigrationDescriptor migrationDescriptor, MigrationCheckpoint checkpoint)
+        throws MigrationException;
+
+    /**
+     * Remove the checkpoint of the given migration in the current wiki, typically once the migration is complete.
+     *
+     * @param migrationDescriptor the migration
+     * @throws MigrationException if an error happens
+     */
+    void removeCheckpoint(AbstractMigrationDescriptor migrationDescriptor) throws MigrationException;
+}
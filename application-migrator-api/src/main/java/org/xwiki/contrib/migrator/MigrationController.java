@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Allows to cancel, pause and resume running migrations.
+ *
+ * Each migration started through the {@link MigrationManager} is controlled through a control id : the id of the
+ * bulk migration or migration job that started it, also available from the request of the job once it is running
+ * (see {@link org.xwiki.contrib.migrator.job.AbstractMigrationJobRequest#getControlId()} and
+ * {@link org.xwiki.contrib.migrator.job.AbstractBulkMigrationJobRequest#getControlId()}). The migrations of a farm
+ * share a single control id. Canceling or pausing a control id has no effect on the migrations started by other
+ * jobs.
+ *
+ * Cancellation and pause are cooperative : the bulk migration job checks {@link #shouldContinue()} between two
+ * migrations and the {@link MigrationExecutor}s check it between two documents, so that a migration always stops
+ * in a consistent state. A canceled migration reports a {@link MigrationStatus.Status#CANCELED} status and is not
+ * recorded in the history, so that it is applied again on the next run.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Role
+public interface MigrationController
+{
+    /**
+     * The property of the execution context holding the control id of the migrations running in the current thread.
+     * The migration jobs set it, and it is inherited by the execution contexts cloned from theirs.
+     */
+    String EXECUTION_CONTEXT_PROPERTY = "migrator.controlId";
+
+    /**
+     * Register a new control id, neither canceled nor paused.
+     *
+     * @return the new control id
+     */
+    String register();
+
+    /**
+     * Forget the given control id once the migrations that it controls are done.
+     *
+     * @param controlId the control id
+     */
+    void unregister(String controlId);
+
+    /**
+     * Ask the migrations of the given control id to stop as soon as possible.
+     *
+     * @param controlId the control id
+     */
+    void cancel(String controlId);
+
+    /**
+     * Ask the migrations of the given control id to wait until {@link #resume(String)} or {@link #cancel(String)} is
+     * called.
+     *
+     * @param controlId the control id
+     */
+    void pause(String controlId);
+
+    /**
+     * Resume the paused migrations of the given control id.
+     *
+     * @param controlId the control id
+     */
+    void resume(String controlId);
+
+    /**
+     * @param controlId the control id
+     * @return true if the migrations of the given control id have been asked to stop
+     */
+    boolean isCanceled(String controlId);
+
+    /**
+     * @param controlId the control id
+     * @return true if the migrations of the given control id have been asked to wait
+     */
+    boolean isPaused(String controlId);
+
+    /**
+     * @return true if the migrations running in the current thread have been asked to stop ; false when the current
+     * execution context has no control id
+     */
+    boolean isCanceled();
+
+    /**
+     * Called by the migrations between two units of work : blocks the calling thread while the migrations of the
+     * control id of the current execution context are paused.
+     *
+     * @return true if the migration can go on, false if it has been canceled (or if the calling thread has been
+     * interrupted while waiting)
+     */
+    boolean shouldContinue();
+
+    /**
+     * Same as {@link #shouldContinue()}, for the given control id.
+     *
+     * @param controlId the control id, or null to always continue
+     * @return true if the migration can go on, false if it has been canceled (or if the calling thread has been
+     * interrupted while waiting)
+     */
+    boolean shouldContinue(String controlId);
+}
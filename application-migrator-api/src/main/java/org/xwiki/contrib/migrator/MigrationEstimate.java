@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator;
+
+/**
+ * The projected cost of a migration, computed by a dry run of the migration which does not save anything.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class MigrationEstimate
+{
+    /**
+     * The estimate of migrations whose cost cannot be projected.
+     */
+    public static final MigrationEstimate UNKNOWN = new MigrationEstimate(-1, -1, 0, 0);
+
+    private final long documentCount;
+
+    private final long objectCount;
+
+    private final int sampleSize;
+
+    private final long sampleDuration;
+
+    /**
+     * Builds a new {@link MigrationEstimate}.
+     *
+     * @param documentCount the number of documents that the migration will modify, or -1 if unknown
+     * @param objectCount the number of XObjects that the migration will modify, or -1 if unknown
+     * @param sampleSize the number of documents migrated without being saved in order to time the migration
+     * @param sampleDuration the time spent migrating the sampled documents, in milliseconds
+     */
+    public MigrationEstimate(long documentCount, long objectCount, int sampleSize, long sampleDuration)
+    {
+        this.documentCount = documentCount;
+        this.objectCount = objectCount;
+        this.sampleSize = sampleSize;
+        this.sampleDuration = sampleDuration;
+    }
+
+    /**
+     * @return the number of documents that the migration will modify, or -1 if unknown
+     */
+    public long getDocumentCount()
+    {
+        return documentCount;
+    }
+
+    /**
+     * @return the number of XObjects that the migration will modify, or -1 if unknown
+     */
+    public long getObjectCount()
+    {
+        return objectCount;
+    }
+
+    /**
+     * @return the number of documents migrated without being saved in order to time the migration
+     */
+    public int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    /**
+     * @return the time spent migrating the sampled documents, in milliseconds
+     */
+    public long getSampleDuration()
+    {
+        return sampleDuration;
+    }
+
+    /**
+     * @return the projected duration of the migration in milliseconds, extrapolated from the sampled documents, or -1
+     * if it cannot be projected ; note that the time needed to save the documents is not part of the samples
+     */
+    public long getEstimatedDuration()
+    {
+        if (documentCount < 0 || sampleSize <= 0) {
+            return -1;
+        }
+
+        return documentCount * sampleDuration / sampleSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d documents, %d objects, about %d ms", documentCount, objectCount,
+            getEstimatedDuration());
+    }
+}
@@ -19,6 +19,13 @@
  */
 package org.xwiki.contrib.migrator;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.xwiki.component.annotation.Role;
 
 /**
@@ -42,4 +49,56 @@ public interface MigrationExecutor<T extends AbstractMigrationDescriptor>
      * @return the status of the current migration
      */
     MigrationStatus execute(T migrationDescriptor) throws MigrationException;
+
+    /**
+     * Estimate the cost of the migration without applying it. Executors should rely on aggregate queries and on the
+     * timing of a few sample migrations that are not saved.
+     *
+     * @param migrationDescriptor the migration descriptor
+     * @throws MigrationException if an error happens
+     * @return the projected cost of the migration, {@link MigrationEstimate#UNKNOWN} if the executor cannot estimate
+     * it
+     * @since 1.2
+     */
+    default MigrationEstimate estimate(T migrationDescriptor) throws MigrationException
+    {
+        return MigrationEstimate.UNKNOWN;
+    }
+
+    /**
+     * Group the given migrations so that the migrations of a same group can be applied together through
+     * {@link #execute(List)}, for example because they work on the same documents. By default, every migration is
+     * alone in its group.
+     *
+     * @param migrationDescriptors the migrations to plan
+     * @throws MigrationException if an error happens
+     * @return the groups of migrations, each migration being part of exactly one group
+     * @since 1.2
+     */
+    default List<List<T>> plan(Collection<T> migrationDescriptors) throws MigrationException
+    {
+        List<List<T>> groups = new ArrayList<>();
+        for (T migrationDescriptor : migrationDescriptors) {
+            groups.add(Collections.singletonList(migrationDescriptor));
+        }
+        return groups;
+    }
+
+    /**
+     * Run a group of migrations computed by {@link #plan(Collection)}. By default, the migrations are run one after
+     * the other through {@link #execute(AbstractMigrationDescriptor)}.
+     *
+     * @param migrationDescriptors the migration descriptors
+     * @throws MigrationException if an error happens
+     * @return the status of each migration, indexed by migration UUID
+     * @since 1.2
+     */
+    default Map<String, MigrationStatus> execute(List<T> migrationDescriptors) throws MigrationException
+    {
+        Map<String, MigrationStatus> migrationStatuses = new LinkedHashMap<>();
+        for (T migrationDescriptor : migrationDescriptors) {
+            migrationStatuses.put(migrationDescriptor.getMigrationUUID(), execute(migrationDescriptor));
+        }
+        return migrationStatuses;
+    }
 }
@@ -19,6 +19,7 @@
  */
 package org.xwiki.contrib.migrator;
 
+import java.util.Collection;
 import java.util.Set;
 
 import org.xwiki.component.annotation.Role;
@@ -49,6 +50,20 @@ public interface MigrationHistoryStore
      */
     Set<String> getAppliedMigrationsForExtensionId(ExtensionId extensionId) throws MigrationException;
 
+    /**
+     * Check if the given migration has already been applied on the wiki.
+     *
+     * @param migrationDescriptor the migration descriptor to check
+     * @return true if the migration has already been applied
+     * @throws MigrationException if an error happens
+     * @since 1.2
+     */
+    default boolean isAppliedMigration(AbstractMigrationDescriptor migrationDescriptor) throws MigrationException
+    {
+        return getAppliedMigrationsForExtensionId(migrationDescriptor.getExtensionId())
+            .contains(migrationDescriptor.getMigrationUUID());
+    }
+
     /**
      * Declare a new migration applied on the wiki.
      *
@@ -56,4 +71,20 @@ public interface MigrationHistoryStore
      * @throws MigrationException if an error happens
      */
     void addAppliedMigration(AbstractMigrationDescriptor migrationDescriptor) throws MigrationException;
+
+    /**
+     * Declare a set of new migrations applied on the wiki. Implementations should take advantage of this method to
+     * persist the migrations of a same extension version at once.
+     *
+     * @param migrationDescriptors the migration descriptors that have been used
+     * @throws MigrationException if an error happens
+     * @since 1.2
+     */
+    default void addAppliedMigrations(Collection<AbstractMigrationDescriptor> migrationDescriptors)
+        throws MigrationException
+    {
+        for (AbstractMigrationDescriptor migrationDescriptor : migrationDescriptors) {
+            addAppliedMigration(migrationDescriptor);
+        }
+    }
 }
@@ -19,6 +19,7 @@
  */
 package org.xwiki.contrib.migrator;
 
+import java.util.Map;
 import java.util.Set;
 
 import org.xwiki.component.annotation.Role;
@@ -81,4 +82,39 @@ public interface MigrationManager
      * @return the job status of the migration
      */
     AbstractBulkMigrationJobStatus applyMigrationsForVersion(ExtensionId extensionId) throws MigrationException;
+
+    /**
+     * Apply all the available migrations for the given extension ID on every wiki of the farm. The available
+     * migrations are computed for each wiki, against its own history, and each wiki is migrated by its own bulk
+     * migration job. This method returns once every wiki has been migrated.
+     *
+     * @param extensionId the extension (and its version) that should be migrated
+     * @param parallelism the maximum number of wikis migrated at the same time
+     * @throws MigrationException if the wikis of the farm cannot be listed
+     * @return the aggregated status of the migrations of every wiki
+     * @since 1.2
+     */
+    FarmMigrationStatus applyMigrationsOnFarm(ExtensionId extensionId, int parallelism) throws MigrationException;
+
+    /**
+     * Do a dry run of the given migrations : nothing is saved, but the cost of each migration is projected.
+     *
+     * @param migrationDescriptors the migrations to estimate
+     * @throws MigrationException if an error happens
+     * @return the projected cost of each migration
+     * @since 1.2
+     */
+    Map<AbstractMigrationDescriptor, MigrationEstimate> estimateMigrations(
+        Set<AbstractMigrationDescriptor> migrationDescriptors) throws MigrationException;
+
+    /**
+     * Do a dry run of all the available migrations for the given extension ID.
+     *
+     * @param extensionId the extension (and its version) that should be migrated
+     * @throws MigrationException if an error happens
+     * @return the projected cost of each available migration
+     * @since 1.2
+     */
+    Map<AbstractMigrationDescriptor, MigrationEstimate> estimateMigrationsForVersion(ExtensionId extensionId)
+        throws MigrationException;
 }
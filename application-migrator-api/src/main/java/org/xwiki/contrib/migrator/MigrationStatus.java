@@ -43,7 +43,14 @@ public class MigrationStatus
         /**
          * The migration failed.
          */
-        FAILURE
+        FAILURE,
+
+        /**
+         * The migration has been canceled before its end, it may have been partially applied.
+         *
+         * @since 1.2
+         */
+        CANCELED
     }
 
     /**
@@ -56,6 +63,13 @@ public class MigrationStatus
      */
     public static final MigrationStatus FAILURE = new MigrationStatus(Status.FAILURE);
 
+    /**
+     * A simple instance of a canceled migration status.
+     *
+     * @since 1.2
+     */
+    public static final MigrationStatus CANCELED = new MigrationStatus(Status.CANCELED);
+
     private Status status;
 
     private String message;
@@ -0,0 +1,48 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator;
+
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Gives access to the wikis of the farm, so that migrations can be applied on every one of them.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Role
+public interface MigrationWikiManager
+{
+    /**
+     * @return the identifiers of all the wikis of the farm, including the main wiki
+     * @throws MigrationException if the wikis cannot be listed
+     */
+    List<String> getWikiIds() throws MigrationException;
+
+    /**
+     * Make the current execution context target the given wiki. The wiki context is copied beforehand, so that the
+     * other threads sharing it are not affected.
+     *
+     * @param wikiId the identifier of the wiki to target
+     */
+    void switchWiki(String wikiId);
+}
@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.event;
+
+import java.io.Serializable;
+
+import org.xwiki.observation.event.EndFoldEvent;
+
+/**
+ * Sent once a migration has saved all its documents in quiet mode, see {@link BulkMigrationStartedEvent}. Listeners
+ * that skipped the documents saved by the migration can catch up at once, for instance from the XClasses described by
+ * the migrations in the source of the event, or by remembering the documents that they skipped.
+ * <p>
+ * The event also send the following parameters:
+ * <ul>
+ * <li>source: the migration descriptor, or the list of migration descriptors applied together</li>
+ * <li>data: the number of documents saved by the migration, as a {@link Long} ; the documents themselves are not
+ * listed so that the event stays small however many documents the migration saves</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class BulkMigrationFinishedEvent implements EndFoldEvent, Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        return otherEvent instanceof BulkMigrationFinishedEvent;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.event;
+
+import java.io.Serializable;
+
+import org.xwiki.observation.event.BeginFoldEvent;
+
+/**
+ * Sent before a migration saves documents in quiet mode. Every event sent until the matching
+ * {@link BulkMigrationFinishedEvent} is part of the bulk migration : listeners doing costly work for each saved
+ * document (indexing, activity stream, notifications, …) can skip or defer it, either by checking whether they are
+ * running inside this event through the {@code ObservationContext}, or by checking the
+ * {@value #EXECUTION_CONTEXT_PROPERTY} property of the execution context, which is also set in the threads used by
+ * the migration.
+ * <p>
+ * The event also send the following parameters:
+ * <ul>
+ * <li>source: the migration descriptor, or the list of migration descriptors applied together</li>
+ * <li>data: null</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class BulkMigrationStartedEvent implements BeginFoldEvent, Serializable
+{
+    /**
+     * The execution context property holding the UUID of the bulk migration saving documents in quiet mode.
+     */
+    public static final String EXECUTION_CONTEXT_PROPERTY = "migrator.bulkMigration";
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        return otherEvent instanceof BulkMigrationStartedEvent;
+    }
+}
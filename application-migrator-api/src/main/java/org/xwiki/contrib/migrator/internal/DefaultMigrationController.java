@@ -0,0 +1,195 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.contrib.migrator.MigrationController;
+
+/**
+ * This is the default implementation of {@link MigrationController}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+public class DefaultMigrationController implements MigrationController
+{
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private Execution execution;
+
+    private final Map<String, ControlState> states = new ConcurrentHashMap<>();
+
+    /**
+     * The cancel and pause requests of a control id.
+     */
+    private static final class ControlState
+    {
+        private boolean canceled;
+
+        private boolean paused;
+    }
+
+    @Override
+    public String register()
+    {
+        String controlId = UUID.randomUUID().toString();
+        states.put(controlId, new ControlState());
+        return controlId;
+    }
+
+    @Override
+    public void unregister(String controlId)
+    {
+        ControlState state = states.remove(controlId);
+        if (state != null) {
+            synchronized (state) {
+                // Release the threads that could still be waiting
+                state.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void cancel(String controlId)
+    {
+        ControlState state = getState(controlId);
+        if (state != null) {
+            logger.info("Canceling the migrations [{}].", controlId);
+            synchronized (state) {
+                state.canceled = true;
+                state.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void pause(String controlId)
+    {
+        ControlState state = getState(controlId);
+        if (state != null) {
+            logger.info("Pausing the migrations [{}].", controlId);
+            synchronized (state) {
+                state.paused = true;
+            }
+        }
+    }
+
+    @Override
+    public void resume(String controlId)
+    {
+        ControlState state = getState(controlId);
+        if (state != null) {
+            logger.info("Resuming the migrations [{}].", controlId);
+            synchronized (state) {
+                state.paused = false;
+                state.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public boolean isCanceled(String controlId)
+    {
+        ControlState state = (controlId != null) ? states.get(controlId) : null;
+        if (state == null) {
+            return false;
+        }
+
+        synchronized (state) {
+            return state.canceled;
+        }
+    }
+
+    @Override
+    public boolean isPaused(String controlId)
+    {
+        ControlState state = (controlId != null) ? states.get(controlId) : null;
+        if (state == null) {
+            return false;
+        }
+
+        synchronized (state) {
+            return state.paused;
+        }
+    }
+
+    @Override
+    public boolean isCanceled()
+    {
+        return isCanceled(getCurrentControlId());
+    }
+
+    @Override
+    public boolean shouldContinue()
+    {
+        return shouldContinue(getCurrentControlId());
+    }
+
+    @Override
+    public boolean shouldContinue(String controlId)
+    {
+        ControlState state = (controlId != null) ? states.get(controlId) : null;
+        if (state == null) {
+            return true;
+        }
+
+        synchronized (state) {
+            try {
+                while (state.paused && !state.canceled && states.containsKey(controlId)) {
+                    state.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            return !state.canceled;
+        }
+    }
+
+    private ControlState getState(String controlId)
+    {
+        ControlState state = (controlId != null) ? states.get(controlId) : null;
+        if (state == null) {
+            logger.warn("No running migrations for the control id [{}].", controlId);
+        }
+        return state;
+    }
+
+    private String getCurrentControlId()
+    {
+        ExecutionContext executionContext = execution.getContext();
+        return (executionContext != null) ? (String) executionContext.getProperty(EXECUTION_CONTEXT_PROPERTY) : null;
+    }
+}
@@ -19,8 +19,19 @@
  */
 package org.xwiki.contrib.migrator.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -28,15 +39,31 @@ import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
 import org.xwiki.contrib.migrator.AbstractMigrationDescriptor;
+import org.xwiki.contrib.migrator.FarmMigrationStatus;
+import org.xwiki.contrib.migrator.MigrationController;
 import org.xwiki.contrib.migrator.MigrationDescriptorProvider;
+import org.xwiki.contrib.migrator.MigrationEstimate;
 import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.contrib.migrator.MigrationExecutor;
 import org.xwiki.contrib.migrator.MigrationHistoryStore;
 import org.xwiki.contrib.migrator.MigrationManager;
+import org.xwiki.contrib.migrator.MigrationWikiManager;
 import org.xwiki.contrib.migrator.internal.job.DefaultBulkMigrationJobRequest;
 import org.xwiki.contrib.migrator.internal.job.DefaultMigrationJobRequest;
 import org.xwiki.contrib.migrator.job.AbstractBulkMigrationJob;
@@ -57,8 +84,24 @@ import org.xwiki.job.JobExecutor;
  */
 @Component
 @Singleton
-public class DefaultMigrationManager implements MigrationManager
+public class DefaultMigrationManager implements MigrationManager, Initializable, Disposable
 {
+    /**
+     * The configuration property holding the maximum number of migration descriptor providers queried at the same
+     * time.
+     */
+    public static final String PROVIDER_THREAD_COUNT_CONFIGURATION_KEY = "migrator.providers.threadCount";
+
+    /**
+     * The configuration property holding the time given to the migration descriptor providers to return their
+     * migrations, in seconds ; 0 to wait for them without limit.
+     */
+    public static final String PROVIDER_TIMEOUT_CONFIGURATION_KEY = "migrator.providers.timeout";
+
+    private static final int DEFAULT_PROVIDER_THREAD_COUNT = 4;
+
+    private static final long DEFAULT_PROVIDER_TIMEOUT = 60;
+
     @Inject
     @Named("context")
     private ComponentManager componentManager;
@@ -72,23 +115,62 @@ public class DefaultMigrationManager implements MigrationManager
     @Inject
     private Provider<MigrationHistoryStore> migrationHistoryStoreProvider;
 
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    private MigrationController migrationController;
+
+    @Inject
+    private Provider<MigrationWikiManager> migrationWikiManagerProvider;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    private ExecutorService providerExecutor;
+
+    private long providerTimeout;
+
     @Override
     public boolean hasAvailableMigrations(ExtensionId extensionId) throws MigrationException
     {
         return (getAvailableMigrations(extensionId).size() != 0);
     }
 
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int providerThreadCount = Math.max(1, configurationSource.getProperty(PROVIDER_THREAD_COUNT_CONFIGURATION_KEY,
+            DEFAULT_PROVIDER_THREAD_COUNT));
+        providerTimeout = configurationSource.getProperty(PROVIDER_TIMEOUT_CONFIGURATION_KEY, DEFAULT_PROVIDER_TIMEOUT);
+
+        providerExecutor = Executors.newFixedThreadPool(providerThreadCount, new BasicThreadFactory.Builder()
+            .namingPattern("Migration descriptor provider %d").daemon(true).build());
+    }
+
+    @Override
+    public void dispose()
+    {
+        providerExecutor.shutdownNow();
+    }
+
     @Override
     public Set<AbstractMigrationDescriptor> getAvailableMigrations(ExtensionId extensionId) throws MigrationException
     {
         // Get through every provider available in the component manager and load their migrations
         Set<AbstractMigrationDescriptor> availableMigrations = new HashSet<>();
         try {
-            for (Object providerObject
-                    : componentManager.getInstanceList(MigrationDescriptorProvider.class)) {
-                MigrationDescriptorProvider provider = (MigrationDescriptorProvider) providerObject;
+            List<MigrationDescriptorProvider> providers =
+                    componentManager.getInstanceList(MigrationDescriptorProvider.class);
 
-                availableMigrations.addAll(provider.getMigrations(extensionId));
+            if (providers.size() == 1) {
+                availableMigrations.addAll(getProviderMigrations(providers.get(0), extensionId));
+            } else {
+                availableMigrations.addAll(getProvidersMigrations(providers, extensionId));
             }
         } catch (ComponentLookupException e) {
             logger.error("Failed to retrieve a list of available migration descriptor providers: {}", e);
@@ -103,6 +185,89 @@ public class DefaultMigrationManager implements MigrationManager
         return availableMigrations;
     }
 
+    /**
+     * Query the given providers concurrently. Each provider runs in a clone of the current execution context and
+     * has {@value #PROVIDER_TIMEOUT_CONFIGURATION_KEY} seconds to answer. A provider that doesn't answer in time is
+     * a failure, as ignoring its migrations would let them be skipped.
+     */
+    private Set<AbstractMigrationDescriptor> getProvidersMigrations(List<MigrationDescriptorProvider> providers,
+        ExtensionId extensionId) throws MigrationException
+    {
+        Map<MigrationDescriptorProvider, Future<Set<AbstractMigrationDescriptor>>> futures = new LinkedHashMap<>();
+        for (MigrationDescriptorProvider provider : providers) {
+            ExecutionContext executionContext = cloneExecutionContext();
+            futures.put(provider, providerExecutor.submit(() -> {
+                try {
+                    if (executionContext != null) {
+                        execution.setContext(executionContext);
+                    } else {
+                        executionContextManager.initialize(new ExecutionContext());
+                    }
+
+                    return getProviderMigrations(provider, extensionId);
+                } finally {
+                    execution.removeContext();
+                }
+            }));
+        }
+
+        Set<AbstractMigrationDescriptor> migrations = new HashSet<>();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(providerTimeout);
+        for (Map.Entry<MigrationDescriptorProvider, Future<Set<AbstractMigrationDescriptor>>> future
+            : futures.entrySet()) {
+            try {
+                if (providerTimeout > 0) {
+                    migrations.addAll(future.getValue().get(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS));
+                } else {
+                    migrations.addAll(future.getValue().get());
+                }
+            } catch (TimeoutException e) {
+                futures.values().forEach(providerFuture -> providerFuture.cancel(true));
+                throw new MigrationException(String.format(
+                    "The migration descriptor provider [%s] did not answer within [%d] seconds.",
+                    future.getKey().getClass().getName(), providerTimeout), e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof MigrationException) {
+                    throw (MigrationException) e.getCause();
+                }
+                throw new MigrationException(String.format("Failed to get the migrations of the provider [%s]",
+                    future.getKey().getClass().getName()), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MigrationException("Interrupted while waiting for the migration descriptor providers.", e);
+            }
+        }
+
+        return migrations;
+    }
+
+    private Set<AbstractMigrationDescriptor> getProviderMigrations(MigrationDescriptorProvider provider,
+        ExtensionId extensionId) throws MigrationException
+    {
+        long startTime = System.currentTimeMillis();
+        Set<AbstractMigrationDescriptor> migrations = provider.getMigrations(extensionId);
+        logger.debug("The migration descriptor provider [{}] returned [{}] migrations in [{}] ms.",
+            provider.getClass().getName(), migrations.size(), System.currentTimeMillis() - startTime);
+
+        return migrations;
+    }
+
+    private ExecutionContext cloneExecutionContext() throws MigrationException
+    {
+        ExecutionContext executionContext = execution.getContext();
+
+        if (executionContext != null) {
+            try {
+                return executionContextManager.clone(executionContext);
+            } catch (ExecutionContextException e) {
+                throw new MigrationException("Failed to clone the current execution context.", e);
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public AbstractMigrationJobStatus applyMigration(AbstractMigrationDescriptor migrationDescriptor)
             throws MigrationException
@@ -120,13 +285,20 @@ public class DefaultMigrationManager implements MigrationManager
     @Override
     public AbstractBulkMigrationJobStatus applyMigrations(Set<AbstractMigrationDescriptor> migrationDescriptors)
             throws MigrationException
+    {
+        return startBulkMigrationJob(migrationDescriptors, null, null).getStatus();
+    }
+
+    private AbstractBulkMigrationJob startBulkMigrationJob(Set<AbstractMigrationDescriptor> migrationDescriptors,
+        String wikiId, String controlId) throws MigrationException
     {
         AbstractBulkMigrationJobRequest jobRequest = new DefaultBulkMigrationJobRequest();
         jobRequest.setMigrationDescriptors(migrationDescriptors);
+        jobRequest.setWikiId(wikiId);
+        jobRequest.setControlId(controlId);
 
         try {
-            return ((AbstractBulkMigrationJob) jobExecutor.execute(AbstractBulkMigrationJob.JOB_TYPE, jobRequest))
-                    .getStatus();
+            return (AbstractBulkMigrationJob) jobExecutor.execute(AbstractBulkMigrationJob.JOB_TYPE, jobRequest);
         } catch (JobException e) {
             throw new MigrationException("Failed to start a bulk migration job.", e);
         }
@@ -137,4 +309,119 @@ public class DefaultMigrationManager implements MigrationManager
     {
         return applyMigrations(getAvailableMigrations(extensionId));
     }
+
+    @Override
+    public FarmMigrationStatus applyMigrationsOnFarm(ExtensionId extensionId, int parallelism)
+        throws MigrationException
+    {
+        List<String> wikiIds = migrationWikiManagerProvider.get().getWikiIds();
+        logger.info("Applying the migrations of [{}] on [{}] wikis, [{}] at a time.", extensionId, wikiIds.size(),
+            parallelism);
+
+        // The bulk migration jobs of all the wikis share a control id, so that canceling one cancels the farm
+        String controlId = migrationController.register();
+        FarmMigrationStatus farmStatus = new FarmMigrationStatus();
+
+        // Each wiki is handled by a thread of its own, discovering the migrations of the wiki and waiting for its
+        // bulk migration job, so that no more than the given number of wikis are migrated at the same time
+        ExecutorService wikiExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, wikiIds.size())),
+            new BasicThreadFactory.Builder().namingPattern("Farm migration %d").daemon(true).build());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String wikiId : wikiIds) {
+                ExecutionContext executionContext = cloneExecutionContext();
+                futures.add(wikiExecutor.submit(() -> {
+                    try {
+                        if (executionContext != null) {
+                            execution.setContext(executionContext);
+                        } else {
+                            executionContextManager.initialize(new ExecutionContext());
+                        }
+
+                        applyMigrationsOnWiki(extensionId, wikiId, controlId, farmStatus);
+                    } finally {
+                        execution.removeContext();
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new MigrationException("A farm migration worker failed unexpectedly.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationException("Interrupted while waiting for the migration of the farm.", e);
+        } finally {
+            wikiExecutor.shutdownNow();
+            migrationController.unregister(controlId);
+        }
+
+        logger.info("Applied the migrations of [{}] on the farm with the status [{}].", extensionId,
+            farmStatus.getStatus());
+        return farmStatus;
+    }
+
+    private void applyMigrationsOnWiki(ExtensionId extensionId, String wikiId, String controlId,
+        FarmMigrationStatus farmStatus)
+    {
+        if (!migrationController.shouldContinue(controlId)) {
+            farmStatus.setCanceledWiki(wikiId);
+            return;
+        }
+
+        try {
+            // Both the providers and the history store work on the wiki of the current context
+            migrationWikiManagerProvider.get().switchWiki(wikiId);
+            Set<AbstractMigrationDescriptor> migrations = getAvailableMigrations(extensionId);
+
+            if (migrations.isEmpty()) {
+                farmStatus.setMigrationStatuses(wikiId, Collections.emptyMap());
+            } else {
+                logger.info("Applying [{}] migrations on the wiki [{}].", migrations.size(), wikiId);
+                AbstractBulkMigrationJob job = startBulkMigrationJob(migrations, wikiId, controlId);
+                job.join();
+                farmStatus.setMigrationStatuses(wikiId, job.getStatus().getMigrationStatuses());
+            }
+        } catch (MigrationException e) {
+            logger.error("Failed to apply the migrations on the wiki [{}].", wikiId, e);
+            farmStatus.setFailedWiki(wikiId, ExceptionUtils.getRootCauseMessage(e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            farmStatus.setFailedWiki(wikiId, "Interrupted while waiting for the migrations of the wiki.");
+        }
+    }
+
+    @Override
+    public Map<AbstractMigrationDescriptor, MigrationEstimate> estimateMigrations(
+        Set<AbstractMigrationDescriptor> migrationDescriptors) throws MigrationException
+    {
+        Map<AbstractMigrationDescriptor, MigrationEstimate> estimates = new LinkedHashMap<>();
+
+        for (AbstractMigrationDescriptor migrationDescriptor : migrationDescriptors) {
+            try {
+                MigrationExecutor executor = componentManager.getInstance(
+                    new DefaultParameterizedType(null, MigrationExecutor.class, migrationDescriptor.getClass()));
+
+                MigrationEstimate estimate = executor.estimate(migrationDescriptor);
+                logger.debug("Estimated migration [{}] : {}", migrationDescriptor.getMigrationName(), estimate);
+                estimates.put(migrationDescriptor, estimate);
+            } catch (ComponentLookupException e) {
+                throw new MigrationException(String.format(
+                    "Failed to retrieve a MigrationExecutor for the descriptor type [%s]",
+                    migrationDescriptor.getClass()), e);
+            }
+        }
+
+        return estimates;
+    }
+
+    @Override
+    public Map<AbstractMigrationDescriptor, MigrationEstimate> estimateMigrationsForVersion(ExtensionId extensionId)
+        throws MigrationException
+    {
+        return estimateMigrations(getAvailableMigrations(extensionId));
+    }
 }
@@ -19,15 +19,29 @@
  */
 package org.xwiki.contrib.migrator.internal.job;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.context.Execution;
 import org.xwiki.contrib.migrator.AbstractMigrationDescriptor;
+import org.xwiki.contrib.migrator.MigrationController;
 import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.contrib.migrator.MigrationExecutor;
+import org.xwiki.contrib.migrator.MigrationHistoryStore;
+import org.xwiki.contrib.migrator.MigrationStatus;
+import org.xwiki.contrib.migrator.MigrationWikiManager;
 import org.xwiki.contrib.migrator.job.AbstractBulkMigrationJob;
 import org.xwiki.contrib.migrator.job.AbstractBulkMigrationJobRequest;
 import org.xwiki.contrib.migrator.job.AbstractBulkMigrationJobStatus;
@@ -51,6 +65,23 @@ public class DefaultBulkMigrationJob extends AbstractBulkMigrationJob
     @Inject
     private JobExecutor jobExecutor;
 
+    @Inject
+    private Provider<MigrationHistoryStore> migrationHistoryStoreProvider;
+
+    @Inject
+    private MigrationController migrationController;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private Provider<MigrationWikiManager> migrationWikiManagerProvider;
+
+    /**
+     * The migrations that have been successfully applied but not yet recorded in the history store.
+     */
+    private List<AbstractMigrationDescriptor> appliedMigrations;
+
     @Override
     protected AbstractBulkMigrationJobStatus createNewStatus(AbstractBulkMigrationJobRequest request)
     {
@@ -64,17 +95,120 @@ public class DefaultBulkMigrationJob extends AbstractBulkMigrationJob
     protected void runInternal() throws Exception
     {
         status.setMigrationStatuses(new HashMap<>());
+        appliedMigrations = new ArrayList<>();
+
+        // Migrations started without a control id get one of their own, so that they can be canceled on their own
+        boolean ownControlId = request.getControlId() == null;
+        if (ownControlId) {
+            request.setControlId(migrationController.register());
+        }
+        execution.getContext().setProperty(MigrationController.EXECUTION_CONTEXT_PROPERTY, request.getControlId());
+
+        try {
+            runMigrations();
+        } finally {
+            if (ownControlId) {
+                migrationController.unregister(request.getControlId());
+            }
+        }
+    }
+
+    private void runMigrations() throws Exception
+    {
+        if (request.getWikiId() != null) {
+            migrationWikiManagerProvider.get().switchWiki(request.getWikiId());
+        }
 
         if (!request.getMigrationDescriptors().isEmpty()) {
-            for (AbstractMigrationDescriptor migrationDescriptor : request.getMigrationDescriptors()) {
+            try {
+                for (List<AbstractMigrationDescriptor> migrationGroup : planMigrations()) {
+                    if (!migrationController.shouldContinue()) {
+                        for (AbstractMigrationDescriptor migrationDescriptor : migrationGroup) {
+                            status.getMigrationStatuses().put(migrationDescriptor.getMigrationUUID(),
+                                    new MigrationStatus(MigrationStatus.Status.CANCELED,
+                                            "The migration has been canceled before being started."));
+                        }
+                        continue;
+                    }
+
+                    try {
+                        if (migrationGroup.size() == 1) {
+                            executeMigration(migrationGroup.get(0));
+                        } else {
+                            executeMigrations(migrationGroup);
+                        }
+                    } catch (MigrationException e) {
+                        logger.error("An exception occurred while running the migrations {} : ",
+                                getMigrationUUIDs(migrationGroup), ExceptionUtils.getRootCause(e));
+                    }
+                }
+            } finally {
+                // The migrations applied so far are recorded even if a migration failed or the job is interrupted
+                flushAppliedMigrations();
+            }
+        }
+    }
+
+    /**
+     * Ask the executor of each type of migration to group the migrations that can be applied together, for example
+     * in a single pass over the documents that they all modify.
+     *
+     * @return the groups of migrations to execute
+     */
+    private List<List<AbstractMigrationDescriptor>> planMigrations()
+    {
+        Map<Class<?>, List<AbstractMigrationDescriptor>> migrationsByType = new LinkedHashMap<>();
+        for (AbstractMigrationDescriptor migrationDescriptor : request.getMigrationDescriptors()) {
+            migrationsByType.computeIfAbsent(migrationDescriptor.getClass(), type -> new ArrayList<>())
+                .add(migrationDescriptor);
+        }
+
+        List<List<AbstractMigrationDescriptor>> migrationGroups = new ArrayList<>();
+        for (Map.Entry<Class<?>, List<AbstractMigrationDescriptor>> entry : migrationsByType.entrySet()) {
+            if (entry.getValue().size() > 1) {
                 try {
-                    executeMigration(migrationDescriptor);
-                } catch (MigrationException e) {
-                    logger.error("An exception occurred while running the migration [{}] : ",
-                            migrationDescriptor.getMigrationUUID(),
-                            ExceptionUtils.getRootCause(e));
+                    migrationGroups.addAll(getExecutor(entry.getKey()).plan(entry.getValue()));
+                    continue;
+                } catch (ComponentLookupException | MigrationException e) {
+                    logger.warn("Failed to plan the migrations of type [{}], running them one by one: [{}]",
+                            entry.getKey(), ExceptionUtils.getRootCauseMessage(e));
                 }
             }
+
+            for (AbstractMigrationDescriptor migrationDescriptor : entry.getValue()) {
+                migrationGroups.add(Collections.singletonList(migrationDescriptor));
+            }
+        }
+
+        return migrationGroups;
+    }
+
+    private MigrationExecutor getExecutor(Class<?> migrationDescriptorType) throws ComponentLookupException
+    {
+        return componentManager.getInstance(
+                new DefaultParameterizedType(null, MigrationExecutor.class, migrationDescriptorType));
+    }
+
+    private List<String> getMigrationUUIDs(List<AbstractMigrationDescriptor> migrationDescriptors)
+    {
+        List<String> migrationUUIDs = new ArrayList<>();
+        for (AbstractMigrationDescriptor migrationDescriptor : migrationDescriptors) {
+            migrationUUIDs.add(migrationDescriptor.getMigrationUUID());
+        }
+        return migrationUUIDs;
+    }
+
+    /**
+     * Record the buffered successful migrations in the history store, with one write per extension version. The
+     * buffer is cleared before writing so that a failed write is never replayed, which could record the migrations
+     * that were written before the failure twice.
+     */
+    private void flushAppliedMigrations() throws MigrationException
+    {
+        if (!appliedMigrations.isEmpty()) {
+            List<AbstractMigrationDescriptor> migrationsToRecord = new ArrayList<>(appliedMigrations);
+            appliedMigrations.clear();
+            migrationHistoryStoreProvider.get().addAppliedMigrations(migrationsToRecord);
         }
     }
 
@@ -82,14 +216,22 @@ public class DefaultBulkMigrationJob extends AbstractBulkMigrationJob
     {
         AbstractMigrationJobRequest jobRequest = new DefaultMigrationJobRequest();
         jobRequest.setMigrationDescriptor(migrationDescriptor);
+        // The history is recorded in bulk by this job, see #flushAppliedMigrations()
+        jobRequest.setRecordHistory(false);
+        jobRequest.setWikiId(request.getWikiId());
+        jobRequest.setControlId(request.getControlId());
 
         try {
             AbstractMigrationJob migrationJob =
                     (AbstractMigrationJob) jobExecutor.execute(AbstractMigrationJob.JOB_TYPE, jobRequest);
             migrationJob.join();
 
-            status.getMigrationStatuses().put(migrationDescriptor.getMigrationUUID(),
-                    migrationJob.getStatus().getMigrationStatus());
+            MigrationStatus migrationStatus = migrationJob.getStatus().getMigrationStatus();
+            status.getMigrationStatuses().put(migrationDescriptor.getMigrationUUID(), migrationStatus);
+
+            if (migrationStatus != null && MigrationStatus.Status.SUCCESS.equals(migrationStatus.getStatus())) {
+                appliedMigrations.add(migrationDescriptor);
+            }
 
         } catch (JobException e) {
             throw new MigrationException(String.format("Failed to execute the migration job for the migration [%s]",
@@ -100,4 +242,29 @@ public class DefaultBulkMigrationJob extends AbstractBulkMigrationJob
                     migrationDescriptor.getMigrationUUID()), e);
         }
     }
+
+    /**
+     * Apply a group of migrations planned together with a single call to their executor. Each migration still gets
+     * its own status and its own entry in the history.
+     */
+    private void executeMigrations(List<AbstractMigrationDescriptor> migrationDescriptors) throws MigrationException
+    {
+        Map<String, MigrationStatus> migrationStatuses;
+        try {
+            migrationStatuses = getExecutor(migrationDescriptors.get(0).getClass()).execute(migrationDescriptors);
+        } catch (ComponentLookupException e) {
+            throw new MigrationException(String.format(
+                    "Failed to retrieve a MigrationExecutor for the descriptor type [%s]",
+                    migrationDescriptors.get(0).getClass()), e);
+        }
+
+        for (AbstractMigrationDescriptor migrationDescriptor : migrationDescriptors) {
+            MigrationStatus migrationStatus = migrationStatuses.get(migrationDescriptor.getMigrationUUID());
+            status.getMigrationStatuses().put(migrationDescriptor.getMigrationUUID(), migrationStatus);
+
+            if (migrationStatus != null && MigrationStatus.Status.SUCCESS.equals(migrationStatus.getStatus())) {
+                appliedMigrations.add(migrationDescriptor);
+            }
+        }
+    }
 }
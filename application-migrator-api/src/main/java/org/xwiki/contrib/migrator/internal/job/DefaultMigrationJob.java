@@ -21,15 +21,19 @@ package org.xwiki.contrib.migrator.internal.job;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.context.Execution;
 import org.xwiki.contrib.migrator.AbstractMigrationDescriptor;
+import org.xwiki.contrib.migrator.MigrationController;
 import org.xwiki.contrib.migrator.MigrationException;
 import org.xwiki.contrib.migrator.MigrationExecutor;
 import org.xwiki.contrib.migrator.MigrationHistoryStore;
 import org.xwiki.contrib.migrator.MigrationStatus;
+import org.xwiki.contrib.migrator.MigrationWikiManager;
 import org.xwiki.contrib.migrator.job.AbstractMigrationJob;
 import org.xwiki.contrib.migrator.job.AbstractMigrationJobRequest;
 import org.xwiki.contrib.migrator.job.AbstractMigrationJobStatus;
@@ -47,7 +51,16 @@ import org.xwiki.job.event.status.JobStatus;
 public class DefaultMigrationJob extends AbstractMigrationJob
 {
     @Inject
-    private MigrationHistoryStore migrationHistoryStore;
+    private Provider<MigrationHistoryStore> migrationHistoryStoreProvider;
+
+    @Inject
+    private Provider<MigrationWikiManager> migrationWikiManagerProvider;
+
+    @Inject
+    private MigrationController migrationController;
+
+    @Inject
+    private Execution execution;
 
     @Override
     protected AbstractMigrationJobStatus createNewStatus(AbstractMigrationJobRequest request)
@@ -60,9 +73,31 @@ public class DefaultMigrationJob extends AbstractMigrationJob
 
     @Override
     protected void runInternal() throws Exception
+    {
+        // Migrations started without a control id get one of their own, so that they can be canceled on their own
+        boolean ownControlId = request.getControlId() == null;
+        if (ownControlId) {
+            request.setControlId(migrationController.register());
+        }
+        execution.getContext().setProperty(MigrationController.EXECUTION_CONTEXT_PROPERTY, request.getControlId());
+
+        try {
+            runMigration();
+        } finally {
+            if (ownControlId) {
+                migrationController.unregister(request.getControlId());
+            }
+        }
+    }
+
+    private void runMigration() throws Exception
     {
         AbstractMigrationDescriptor migrationDescriptor = request.getMigrationDescriptor();
 
+        if (request.getWikiId() != null) {
+            migrationWikiManagerProvider.get().switchWiki(request.getWikiId());
+        }
+
         // Fetch the executor that could be used for the migration
         try {
             MigrationExecutor executor = componentManager.getInstance(
@@ -72,8 +107,8 @@ public class DefaultMigrationJob extends AbstractMigrationJob
             MigrationStatus migrationStatus = executor.execute(migrationDescriptor);
             status.setMigrationStatus(migrationStatus);
 
-            if (migrationStatus.getStatus().equals(MigrationStatus.Status.SUCCESS)) {
-                migrationHistoryStore.addAppliedMigration(migrationDescriptor);
+            if (migrationStatus.getStatus().equals(MigrationStatus.Status.SUCCESS) && request.isRecordHistory()) {
+                migrationHistoryStoreProvider.get().addAppliedMigration(migrationDescriptor);
             }
         } catch (ComponentLookupException e) {
             throw new MigrationException(String.format(
@@ -32,6 +32,21 @@ import org.xwiki.job.AbstractRequest;
  */
 public abstract class AbstractBulkMigrationJobRequest extends AbstractRequest
 {
+    /**
+     * The request property holding the wiki on which the migrations should be applied.
+     *
+     * @since 1.2
+     */
+    public static final String PROPERTY_WIKI_ID = "migrator.wikiId";
+
+    /**
+     * The request property holding the control id of the migrations, see
+     * {@link org.xwiki.contrib.migrator.MigrationController}.
+     *
+     * @since 1.2
+     */
+    public static final String PROPERTY_CONTROL_ID = "migrator.controlId";
+
     /**
      * Define a set of migration descriptors that will be executed one by one.
      *
@@ -43,4 +58,48 @@ public abstract class AbstractBulkMigrationJobRequest extends AbstractRequest
      * @return the migration descriptors registered through {@link #setMigrationDescriptors(Set)}}
      */
     public abstract Set<AbstractMigrationDescriptor> getMigrationDescriptors();
+
+    /**
+     * Define the wiki on which the migrations should be applied. The job targets the wiki of its execution context
+     * when no wiki is defined.
+     *
+     * @param wikiId the identifier of the wiki
+     * @since 1.2
+     */
+    public void setWikiId(String wikiId)
+    {
+        setProperty(PROPERTY_WIKI_ID, wikiId);
+    }
+
+    /**
+     * @return the wiki on which the migrations should be applied, or null if the job targets the wiki of its
+     * execution context
+     * @since 1.2
+     */
+    public String getWikiId()
+    {
+        return getProperty(PROPERTY_WIKI_ID);
+    }
+
+    /**
+     * Define the control id allowing to cancel, pause and resume the migrations. The job registers a control id of its
+     * own when none is defined, and sets it in this request once it is running.
+     *
+     * @param controlId the control id registered in the {@link org.xwiki.contrib.migrator.MigrationController}
+     * @since 1.2
+     */
+    public void setControlId(String controlId)
+    {
+        setProperty(PROPERTY_CONTROL_ID, controlId);
+    }
+
+    /**
+     * @return the control id allowing to cancel, pause and resume the migrations, or null if the job has not been
+     * started yet
+     * @since 1.2
+     */
+    public String getControlId()
+    {
+        return getProperty(PROPERTY_CONTROL_ID);
+    }
 }
@@ -30,6 +30,28 @@ import org.xwiki.job.AbstractRequest;
  */
 public abstract class AbstractMigrationJobRequest extends AbstractRequest
 {
+    /**
+     * The request property holding whether the job should record the migration in the history store.
+     *
+     * @since 1.2
+     */
+    public static final String PROPERTY_RECORD_HISTORY = "migrator.recordHistory";
+
+    /**
+     * The request property holding the wiki on which the migration should be applied.
+     *
+     * @since 1.2
+     */
+    public static final String PROPERTY_WIKI_ID = "migrator.wikiId";
+
+    /**
+     * The request property holding the control id of the migration, see
+     * {@link org.xwiki.contrib.migrator.MigrationController}.
+     *
+     * @since 1.2
+     */
+    public static final String PROPERTY_CONTROL_ID = "migrator.controlId";
+
     /**
      * Define the migration descriptor that will be used in this job. The migration descriptor will contain all
      * the information needed for the migration.
@@ -42,4 +64,70 @@ public abstract class AbstractMigrationJobRequest extends AbstractRequest
      * @return the migration descriptor registered through {@link #setMigrationDescriptor(AbstractMigrationDescriptor)}
      */
     public abstract AbstractMigrationDescriptor getMigrationDescriptor();
+
+    /**
+     * Define whether the job should record the migration in the
+     * {@link org.xwiki.contrib.migrator.MigrationHistoryStore} once it has been successfully applied. This can be
+     * disabled when the caller records the migrations by itself, for example in order to batch the writes.
+     *
+     * @param recordHistory true if the job should record the migration in the history store
+     * @since 1.2
+     */
+    public void setRecordHistory(boolean recordHistory)
+    {
+        setProperty(PROPERTY_RECORD_HISTORY, recordHistory);
+    }
+
+    /**
+     * @return true if the job should record the migration in the history store (defaults to true)
+     * @since 1.2
+     */
+    public boolean isRecordHistory()
+    {
+        return getProperty(PROPERTY_RECORD_HISTORY, true);
+    }
+
+    /**
+     * Define the wiki on which the migration should be applied. The job targets the wiki of its execution context
+     * when no wiki is defined.
+     *
+     * @param wikiId the identifier of the wiki
+     * @since 1.2
+     */
+    public void setWikiId(String wikiId)
+    {
+        setProperty(PROPERTY_WIKI_ID, wikiId);
+    }
+
+    /**
+     * @return the wiki on which the migration should be applied, or null if the job targets the wiki of its
+     * execution context
+     * @since 1.2
+     */
+    public String getWikiId()
+    {
+        return getProperty(PROPERTY_WIKI_ID);
+    }
+
+    /**
+     * Define the control id allowing to cancel, pause and resume the migration. The job registers a control id of its
+     * own when none is defined, and sets it in this request once it is running.
+     *
+     * @param controlId the control id registered in the {@link org.xwiki.contrib.migrator.MigrationController}
+     * @since 1.2
+     */
+    public void setControlId(String controlId)
+    {
+        setProperty(PROPERTY_CONTROL_ID, controlId);
+    }
+
+    /**
+     * @return the control id allowing to cancel, pause and resume the migration, or null if the job has not been
+     * started yet
+     * @since 1.2
+     */
+    public String getControlId()
+    {
+        return getProperty(PROPERTY_CONTROL_ID);
+    }
 }
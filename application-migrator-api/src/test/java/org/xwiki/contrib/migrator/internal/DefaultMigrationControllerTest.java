@@ -0,0 +1,156 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.contrib.migrator.MigrationController;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DefaultMigrationController}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class DefaultMigrationControllerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<MigrationController> mocker =
+            new MockitoComponentMockingRule<>(DefaultMigrationController.class);
+
+    private MigrationController migrationController;
+
+    private ExecutionContext executionContext;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        migrationController = mocker.getComponentUnderTest();
+
+        executionContext = new ExecutionContext();
+        Execution execution = mocker.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(executionContext);
+    }
+
+    @Test
+    public void cancelOnlyStopsTheMigrationsOfTheControlId()
+    {
+        String controlId = migrationController.register();
+        String otherControlId = migrationController.register();
+        assertNotEquals(controlId, otherControlId);
+
+        migrationController.cancel(controlId);
+
+        assertTrue(migrationController.isCanceled(controlId));
+        assertFalse(migrationController.shouldContinue(controlId));
+        assertFalse(migrationController.isCanceled(otherControlId));
+        assertTrue(migrationController.shouldContinue(otherControlId));
+    }
+
+    @Test
+    public void registerDoesNotClearOtherControlIds()
+    {
+        String controlId = migrationController.register();
+        migrationController.pause(controlId);
+        migrationController.cancel(controlId);
+
+        migrationController.register();
+
+        assertTrue(migrationController.isPaused(controlId));
+        assertTrue(migrationController.isCanceled(controlId));
+    }
+
+    @Test
+    public void currentControlIdIsReadFromTheExecutionContext()
+    {
+        assertTrue(migrationController.shouldContinue());
+        assertFalse(migrationController.isCanceled());
+
+        String controlId = migrationController.register();
+        executionContext.setProperty(MigrationController.EXECUTION_CONTEXT_PROPERTY, controlId);
+        migrationController.cancel(controlId);
+
+        assertTrue(migrationController.isCanceled());
+        assertFalse(migrationController.shouldContinue());
+    }
+
+    @Test
+    public void unknownControlIds()
+    {
+        migrationController.cancel("unknown");
+
+        assertFalse(migrationController.isCanceled("unknown"));
+        assertTrue(migrationController.shouldContinue("unknown"));
+        assertTrue(migrationController.shouldContinue(null));
+    }
+
+    @Test
+    public void unregisteredControlIdsAreForgotten()
+    {
+        String controlId = migrationController.register();
+        migrationController.cancel(controlId);
+        migrationController.unregister(controlId);
+
+        assertFalse(migrationController.isCanceled(controlId));
+    }
+
+    @Test
+    public void pauseBlocksUntilResumed() throws Exception
+    {
+        String controlId = migrationController.register();
+        migrationController.pause(controlId);
+
+        CompletableFuture<Boolean> shouldContinue =
+            CompletableFuture.supplyAsync(() -> migrationController.shouldContinue(controlId));
+        Thread.sleep(100);
+        assertFalse(shouldContinue.isDone());
+
+        migrationController.resume(controlId);
+
+        assertTrue(shouldContinue.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelReleasesThePausedMigrations() throws Exception
+    {
+        String controlId = migrationController.register();
+        migrationController.pause(controlId);
+
+        CompletableFuture<Boolean> shouldContinue =
+            CompletableFuture.supplyAsync(() -> migrationController.shouldContinue(controlId));
+        Thread.sleep(100);
+
+        migrationController.cancel(controlId);
+
+        assertFalse(shouldContinue.get(10, TimeUnit.SECONDS));
+    }
+}
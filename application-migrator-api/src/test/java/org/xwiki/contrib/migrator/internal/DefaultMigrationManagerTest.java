@@ -19,9 +19,12 @@
  */
 package org.xwiki.contrib.migrator.internal;
 
+import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -29,8 +32,12 @@ import org.junit.Test;
 import org.mockito.internal.util.collections.Sets;
 import org.slf4j.Logger;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.contrib.migrator.AbstractMigrationDescriptor;
 import org.xwiki.contrib.migrator.MigrationDescriptorProvider;
+import org.xwiki.contrib.migrator.MigrationEstimate;
+import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.contrib.migrator.MigrationExecutor;
 import org.xwiki.contrib.migrator.MigrationHistoryStore;
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionId;
@@ -41,6 +48,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -62,6 +72,8 @@ public class DefaultMigrationManagerTest
 
     private JobExecutor jobExecutor;
 
+    private ConfigurationSource configurationSource;
+
     private MigrationHistoryStore migrationHistoryStore;
 
     private MigrationDescriptorProvider migrationDescriptorProvider1;
@@ -79,6 +91,13 @@ public class DefaultMigrationManagerTest
         logger = mocker.getMockedLogger();
         jobExecutor = mocker.registerMockComponent(JobExecutor.class);
 
+        // Use the default configuration unless a test overrides it
+        configurationSource = mocker.registerMockComponent(ConfigurationSource.class, "xwikiproperties");
+        when(configurationSource.getProperty(eq(DefaultMigrationManager.PROVIDER_THREAD_COUNT_CONFIGURATION_KEY),
+                anyInt())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(configurationSource.getProperty(eq(DefaultMigrationManager.PROVIDER_TIMEOUT_CONFIGURATION_KEY),
+                anyLong())).thenAnswer(invocation -> invocation.getArgument(1));
+
         // By default, the migration history store will always return no migrations, this can be easily
         // overridden if needed to perform some tests
         migrationHistoryStore = mocker.registerMockComponent(MigrationHistoryStore.class);
@@ -181,4 +200,61 @@ public class DefaultMigrationManagerTest
         assertFalse(resultSet.contains(appliedDescriptor1));
         assertFalse(resultSet.contains(appliedDescriptor2));
     }
+
+    @Test(expected = MigrationException.class)
+    public void getAvailableMigrationsWithFailingProvider() throws Exception
+    {
+        when(migrationDescriptorProvider2.getMigrations(dummyExtensionId))
+                .thenThrow(new MigrationException("Provider failure"));
+
+        mocker.getComponentUnderTest().getAvailableMigrations(dummyExtensionId);
+    }
+
+    @Test(expected = MigrationException.class)
+    public void getAvailableMigrationsWithProviderTimeout() throws Exception
+    {
+        when(configurationSource.getProperty(eq(DefaultMigrationManager.PROVIDER_TIMEOUT_CONFIGURATION_KEY),
+                anyLong())).thenReturn(1L);
+        when(migrationDescriptorProvider2.getMigrations(dummyExtensionId)).thenAnswer(invocation -> {
+            // Interrupted when the manager gives up on the provider
+            TimeUnit.SECONDS.sleep(30);
+            return Collections.EMPTY_SET;
+        });
+
+        // The migrations of the provider are not silently dropped
+        mocker.getComponentUnderTest().hasAvailableMigrations(dummyExtensionId);
+    }
+
+    @Test
+    public void getAvailableMigrationsWithSingleProvider() throws Exception
+    {
+        Set<AbstractMigrationDescriptor> descriptorsForProvider1 = Sets.newSet(
+                mock(AbstractMigrationDescriptor.class),
+                mock(AbstractMigrationDescriptor.class)
+        );
+
+        when(migrationDescriptorProvider1.getMigrations(dummyExtensionId)).thenReturn(descriptorsForProvider1);
+        when(contextComponentManager.getInstanceList(MigrationDescriptorProvider.class)).thenReturn(
+                Collections.singletonList(migrationDescriptorProvider1));
+
+        assertEquals(descriptorsForProvider1,
+                mocker.getComponentUnderTest().getAvailableMigrations(dummyExtensionId));
+    }
+
+    @Test
+    public void estimateMigrations() throws Exception
+    {
+        AbstractMigrationDescriptor descriptor = new FakeMigrationDescriptor(dummyExtensionId, "m1", "md1", null);
+        MigrationEstimate estimate = new MigrationEstimate(200, 300, 4, 10);
+
+        MigrationExecutor executor = mock(MigrationExecutor.class);
+        when(executor.estimate(descriptor)).thenReturn(estimate);
+        when(contextComponentManager.getInstance(any(Type.class))).thenReturn(executor);
+
+        Map<AbstractMigrationDescriptor, MigrationEstimate> estimates =
+                mocker.getComponentUnderTest().estimateMigrations(Collections.singleton(descriptor));
+
+        assertEquals(Collections.singletonMap(descriptor, estimate), estimates);
+        assertEquals(500, estimates.get(descriptor).getEstimatedDuration());
+    }
 }
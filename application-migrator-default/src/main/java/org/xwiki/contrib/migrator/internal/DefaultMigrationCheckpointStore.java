@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.migrator.AbstractMigrationDescriptor;
+import org.xwiki.contrib.migrator.MigrationCheckpoint;
+import org.xwiki.contrib.migrator.MigrationCheckpointStore;
+import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Default implementation of the {@link MigrationCheckpointStore}, storing the checkpoint of each migration in its own
+ * wiki document.
+ *
+ * Checkpoints are stored using the following path:
+ * <MIGRATOR_SPACE_NAME>.<CHECKPOINT_SPACE_NAME>.<MIGRATION_UUID>
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+public class DefaultMigrationCheckpointStore implements MigrationCheckpointStore
+{
+    /**
+     * The sub-space name of the checkpoints of the migrator app.
+     */
+    public static final String CHECKPOINT_SPACE_NAME = "Checkpoint";
+
+    @Inject
+    private Provider<XWikiContext> xWikiContextProvider;
+
+    @Inject
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    @Override
+    public MigrationCheckpoint getCheckpoint(AbstractMigrationDescriptor migrationDescriptor)
+        throws MigrationException
+    {
+        XWikiContext xContext = xWikiContextProvider.get();
+        DocumentReference documentReference = buildDocumentReference(migrationDescriptor);
+
+        try {
+            if (xContext.getWiki().exists(documentReference, xContext)) {
+                BaseObject checkpointObject = xContext.getWiki().getDocument(documentReference, xContext)
+                    .getXObject(getClassReference());
+
+                if (checkpointObject != null) {
+                    return new MigrationCheckpoint(checkpointObject.getLargeStringValue(
+                            MigrationCheckpointClassDocumentInitializer.LAST_KEY_PROPERTY),
+                        checkpointObject.getLongValue(
+                            MigrationCheckpointClassDocumentInitializer.PROCESSED_COUNT_PROPERTY));
+                }
+            }
+        } catch (XWikiException e) {
+            throw new MigrationException(String.format("Failed to load the checkpoint of the migration [%s]",
+                migrationDescriptor.getMigrationUUID()), e);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void saveCheckpoint(AbstractMigrationDescriptor migrationDescriptor, MigrationCheckpoint checkpoint)
+        throws MigrationException
+    {
+        XWikiContext xContext = xWikiContextProvider.get();
+        XWiki xWiki = xContext.getWiki();
+
+        try {
+            XWikiDocument document = xWiki.getDocument(buildDocumentReference(migrationDescriptor), xContext);
+            BaseObject checkpointObject = document.getXObject(getClassReference(), true, xContext);
+
+            checkpointObject.setLargeStringValue(MigrationCheckpointClassDocumentInitializer.LAST_KEY_PROPERTY,
+                checkpoint.getLastKey());
+            checkpointObject.setLongValue(MigrationCheckpointClassDocumentInitializer.PROCESSED_COUNT_PROPERTY,
+                checkpoint.getProcessedCount());
+
+            document.setHidden(true);
+            xWiki.saveDocument(document, String.format("Checkpoint after [%d] elements.",
+                checkpoint.getProcessedCount()), true, xContext);
+        } catch (XWikiException e) {
+            throw new MigrationException(String.format("Failed to save the checkpoint of the migration [%s]",
+                migrationDescriptor.getMigrationUUID()), e);
+        }
+    }
+
+    @Override
+    public void removeCheckpoint(AbstractMigrationDescriptor migrationDescriptor) throws MigrationException
+    {
+        XWikiContext xContext = xWikiContextProvider.get();
+        XWiki xWiki = xContext.getWiki();
+        DocumentReference documentReference = buildDocumentReference(migrationDescriptor);
+
+        try {
+            if (xWiki.exists(documentReference, xContext)) {
+                xWiki.deleteDocument(xWiki.getDocument(documentReference, xContext), false, xContext);
+            }
+        } catch (XWikiException e) {
+            throw new MigrationException(String.format("Failed to remove the checkpoint of the migration [%s]",
+                migrationDescriptor.getMigrationUUID()), e);
+        }
+    }
+
+    private DocumentReference getClassReference()
+    {
+        return documentReferenceResolver.resolve(MigrationCheckpointClassDocumentInitializer.CLASS_REFERENCE);
+    }
+
+    private DocumentReference buildDocumentReference(AbstractMigrationDescriptor migrationDescriptor)
+    {
+        return new DocumentReference(xWikiContextProvider.get().getWikiId(),
+            Arrays.asList(DefaultMigrationHistoryStore.MIGRATOR_SPACE_NAME, CHECKPOINT_SPACE_NAME),
+            migrationDescriptor.getMigrationUUID());
+    }
+}
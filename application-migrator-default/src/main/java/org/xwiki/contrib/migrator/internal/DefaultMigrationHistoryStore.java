@@ -19,9 +19,14 @@
  */
 package org.xwiki.contrib.migrator.internal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -42,6 +47,7 @@ import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
+import org.xwiki.text.StringUtils;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
@@ -91,15 +97,22 @@ public class DefaultMigrationHistoryStore implements MigrationHistoryStore
     @Named("local")
     private EntityReferenceSerializer<String> localStringEntityReferenceSerializer;
 
+    @Inject
+    private MigrationHistoryCache migrationHistoryCache;
+
     @Override
     public Set<String> getAppliedMigrationsForExtensionId(ExtensionId extensionId) throws MigrationException
     {
         Set<String> resultSet = new HashSet<>();
 
         if (extensionId.getVersion() != null && extensionId.getId() != null && !extensionId.getId().isEmpty()) {
-            SpaceReference extensionSpaceReference = new SpaceReference(
-                xWikiContextProvider.get().getWikiId(),
-                Arrays.asList(MIGRATOR_SPACE_NAME, STORE_SPACE_NAME, extensionId.getId()));
+            SpaceReference extensionSpaceReference = buildSpaceReference(extensionId);
+
+            Set<String> cachedResultSet = migrationHistoryCache.get(extensionSpaceReference);
+            if (cachedResultSet != null) {
+                return new HashSet<>(cachedResultSet);
+            }
+
             try {
                 Query query = queryManager.createQuery(
                         "select uuid.value from BaseObject obj, StringProperty uuid "
@@ -114,6 +127,10 @@ public class DefaultMigrationHistoryStore implements MigrationHistoryStore
                 List<String> results = query.execute();
                 resultSet = results.stream().collect(Collectors.toSet());
 
+                // Cache an immutable copy so that callers cannot alter the cached entry
+                migrationHistoryCache.set(extensionSpaceReference,
+                    Collections.unmodifiableSet(new HashSet<>(resultSet)));
+
             } catch (QueryException e) {
                 throw new MigrationException(
                         "Failed to retrieve the list of applied migrations for the given extension ID", e);
@@ -125,43 +142,75 @@ public class DefaultMigrationHistoryStore implements MigrationHistoryStore
 
     @Override
     public void addAppliedMigration(AbstractMigrationDescriptor migrationDescriptor) throws MigrationException
+    {
+        addAppliedMigrations(Collections.singletonList(migrationDescriptor));
+    }
+
+    @Override
+    public void addAppliedMigrations(Collection<AbstractMigrationDescriptor> migrationDescriptors)
+        throws MigrationException
+    {
+        // Group the migrations by extension version so that each history document is only saved once
+        Map<ExtensionId, List<String>> migrationsByExtension = new LinkedHashMap<>();
+        for (AbstractMigrationDescriptor migrationDescriptor : migrationDescriptors) {
+            migrationsByExtension.computeIfAbsent(migrationDescriptor.getExtensionId(), k -> new ArrayList<>())
+                .add(migrationDescriptor.getMigrationUUID());
+        }
+
+        for (Map.Entry<ExtensionId, List<String>> entry : migrationsByExtension.entrySet()) {
+            storeAppliedMigrations(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void storeAppliedMigrations(ExtensionId extensionId, List<String> migrationUUIDs)
+        throws MigrationException
     {
         XWikiContext xContext = xWikiContextProvider.get();
         XWiki xWiki = xContext.getWiki();
-        String migrationUUID = migrationDescriptor.getMigrationUUID();
 
         if (xWiki != null) {
             try {
-                // Get the concerned document and create an XObject for holding the new migration UUID
-                XWikiDocument document =
-                        xWiki.getDocument(buildDocumentReference(migrationDescriptor.getExtensionId()), xContext);
+                // Get the concerned document and create an XObject for holding each new migration UUID
+                XWikiDocument document = xWiki.getDocument(buildDocumentReference(extensionId), xContext);
                 DocumentReference migrationClassReference =
                         documentReferenceResolver.resolve(MigrationHistoryClassDocumentInitializer.CLASS_REFERENCE);
-                int objectNumber = document.createXObject(migrationClassReference, xContext);
-                BaseObject migrationObject = document.getXObject(migrationClassReference, objectNumber);
-
-                if (migrationObject != null) {
-                    // Actually set the object value and save the document.
-                    migrationObject.set(MigrationHistoryClassDocumentInitializer.UUID_PROPERTY,
-                            migrationUUID, xContext);
-                    document.setHidden(true);
-                    xWiki.saveDocument(document, String.format("Add migration [%s].", migrationUUID), xContext);
-                } else {
-                    throw new MigrationException(String.format("Failed to create the XObject [%s] on document [%s]",
-                            objectNumber, document.getDocumentReference()));
+
+                for (String migrationUUID : migrationUUIDs) {
+                    int objectNumber = document.createXObject(migrationClassReference, xContext);
+                    BaseObject migrationObject = document.getXObject(migrationClassReference, objectNumber);
+
+                    if (migrationObject != null) {
+                        migrationObject.set(MigrationHistoryClassDocumentInitializer.UUID_PROPERTY,
+                                migrationUUID, xContext);
+                    } else {
+                        throw new MigrationException(String.format(
+                                "Failed to create the XObject [%s] on document [%s]",
+                                objectNumber, document.getDocumentReference()));
+                    }
                 }
 
+                // Actually save the document, only once for all the migrations of this extension version
+                document.setHidden(true);
+                String saveComment = (migrationUUIDs.size() == 1)
+                    ? String.format("Add migration [%s].", migrationUUIDs.get(0))
+                    : String.format("Add migrations [%s].", StringUtils.join(migrationUUIDs, ", "));
+                xWiki.saveDocument(document, saveComment, xContext);
+                migrationHistoryCache.invalidate(buildSpaceReference(extensionId));
             } catch (XWikiException e) {
-                throw new MigrationException(String.format("Failed to store the migration [%s]", migrationUUID), e);
+                throw new MigrationException(String.format("Failed to store the migrations %s", migrationUUIDs), e);
             }
         }
     }
 
-    private DocumentReference buildDocumentReference(ExtensionId extensionId)
+    private SpaceReference buildSpaceReference(ExtensionId extensionId)
     {
-        return new DocumentReference(
+        return new SpaceReference(
                 xWikiContextProvider.get().getWikiId(),
-                Arrays.asList(MIGRATOR_SPACE_NAME, STORE_SPACE_NAME, extensionId.getId()),
-                extensionId.getVersion().getValue());
+                Arrays.asList(MIGRATOR_SPACE_NAME, STORE_SPACE_NAME, extensionId.getId()));
+    }
+
+    private DocumentReference buildDocumentReference(ExtensionId extensionId)
+    {
+        return new DocumentReference(extensionId.getVersion().getValue(), buildSpaceReference(extensionId));
     }
 }
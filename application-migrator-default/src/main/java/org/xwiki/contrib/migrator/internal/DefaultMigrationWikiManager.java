@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.contrib.migrator.MigrationWikiManager;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+import org.xwiki.wiki.manager.WikiManagerException;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * This is the default implementation of {@link MigrationWikiManager}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+public class DefaultMigrationWikiManager implements MigrationWikiManager
+{
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private Provider<XWikiContext> xWikiContextProvider;
+
+    @Inject
+    private Execution execution;
+
+    @Override
+    public List<String> getWikiIds() throws MigrationException
+    {
+        try {
+            return new ArrayList<>(wikiDescriptorManager.getAllIds());
+        } catch (WikiManagerException e) {
+            throw new MigrationException("Failed to list the wikis of the farm.", e);
+        }
+    }
+
+    @Override
+    public void switchWiki(String wikiId)
+    {
+        XWikiContext xWikiContext = xWikiContextProvider.get().clone();
+        xWikiContext.setWikiId(wikiId);
+        xWikiContext.declareInExecutionContext(execution.getContext());
+    }
+}
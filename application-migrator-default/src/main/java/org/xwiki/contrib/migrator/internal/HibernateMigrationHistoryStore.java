@@ -0,0 +1,326 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.contrib.migrator.AbstractMigrationDescriptor;
+import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.contrib.migrator.MigrationHistoryStore;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.store.hibernate.HibernateSessionFactory;
+
+/**
+ * Implementation of the {@link MigrationHistoryStore} backed by a dedicated database table (see
+ * {@link MigrationHistoryEntry}) instead of XObjects. The table is indexed on (wiki, extension id, version, uuid),
+ * which allows to check if a migration has been applied without scanning the objects of the wiki.
+ *
+ * The table is accessed through a session factory owned by the store : it reuses the connection settings of the
+ * wiki but only maps {@link MigrationHistoryEntry}, so that the session factory used by the rest of the wiki is left
+ * untouched. As the entries hold their wiki, the table of every wiki is stored in the database targeted by these
+ * connection settings (the one of the main wiki), where it is created the first time the store is used. The first
+ * time the store is used on a wiki, the history stored by {@link DefaultMigrationHistoryStore} is imported if the
+ * table doesn't contain any entry for this wiki yet.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+@Named(HibernateMigrationHistoryStore.HINT)
+public class HibernateMigrationHistoryStore implements MigrationHistoryStore, Disposable
+{
+    /**
+     * The hint of the component.
+     */
+    public static final String HINT = "hibernate";
+
+    private static final String MAPPING_RESOURCE = "migrator.hbm.xml";
+
+    private static final String WIKI_PARAMETER = "wiki";
+
+    private static final String EXTENSION_ID_PARAMETER = "extensionId";
+
+    @Inject
+    private HibernateSessionFactory sessionFactory;
+
+    @Inject
+    private Provider<XWikiContext> xWikiContextProvider;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    @Inject
+    private Logger logger;
+
+    private final Set<String> preparedWikis = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The session factory dedicated to the history table, built the first time the store is used.
+     */
+    private SessionFactory historySessionFactory;
+
+    @Override
+    public synchronized void dispose()
+    {
+        if (historySessionFactory != null) {
+            historySessionFactory.close();
+            historySessionFactory = null;
+        }
+    }
+
+    @Override
+    public Set<String> getAppliedMigrationsForExtensionId(ExtensionId extensionId) throws MigrationException
+    {
+        Set<String> resultSet = new HashSet<>();
+
+        if (extensionId.getVersion() != null && extensionId.getId() != null && !extensionId.getId().isEmpty()) {
+            XWikiContext xContext = xWikiContextProvider.get();
+            prepareWiki(xContext);
+
+            List<String> results = execute(session -> session.createQuery(
+                    "select entry.uuid from MigrationHistoryEntry entry "
+                        + "where entry.wiki = :wiki and entry.extensionId = :extensionId")
+                .setParameter(WIKI_PARAMETER, xContext.getWikiId())
+                .setParameter(EXTENSION_ID_PARAMETER, extensionId.getId())
+                .list(), "Failed to retrieve the list of applied migrations for the given extension ID");
+            resultSet.addAll(results);
+        }
+
+        return resultSet;
+    }
+
+    @Override
+    public boolean isAppliedMigration(AbstractMigrationDescriptor migrationDescriptor) throws MigrationException
+    {
+        XWikiContext xContext = xWikiContextProvider.get();
+        prepareWiki(xContext);
+
+        // The id of an entry is computed from its key, so this is a primary key lookup
+        long entryId = computeEntryId(xContext.getWikiId(), migrationDescriptor);
+        return execute(session -> session.get(MigrationHistoryEntry.class, entryId) != null,
+            String.format("Failed to check if the migration [%s] has been applied",
+                migrationDescriptor.getMigrationUUID()));
+    }
+
+    @Override
+    public void addAppliedMigration(AbstractMigrationDescriptor migrationDescriptor) throws MigrationException
+    {
+        addAppliedMigrations(Collections.singletonList(migrationDescriptor));
+    }
+
+    @Override
+    public void addAppliedMigrations(Collection<AbstractMigrationDescriptor> migrationDescriptors)
+        throws MigrationException
+    {
+        XWikiContext xContext = xWikiContextProvider.get();
+        prepareWiki(xContext);
+
+        List<MigrationHistoryEntry> entries = new ArrayList<>(migrationDescriptors.size());
+        for (AbstractMigrationDescriptor migrationDescriptor : migrationDescriptors) {
+            ExtensionId extensionId = migrationDescriptor.getExtensionId();
+            entries.add(new MigrationHistoryEntry(xContext.getWikiId(), extensionId.getId(),
+                extensionId.getVersion().getValue(), migrationDescriptor.getMigrationUUID()));
+        }
+
+        saveEntries(entries, String.format("Failed to store [%s] migrations", entries.size()));
+    }
+
+    /**
+     * Import in the table the migrations recorded as XObjects by {@link DefaultMigrationHistoryStore} in the
+     * current wiki. Migrations that are already present in the table are ignored.
+     *
+     * @return the number of migrations found in the XObject based history
+     * @throws MigrationException if an error happens
+     */
+    public int importDocumentHistory() throws MigrationException
+    {
+        XWikiContext xContext = xWikiContextProvider.get();
+        String wiki = xContext.getWikiId();
+
+        try {
+            Query query = queryManager.createQuery(
+                    "select obj.name, uuid.value from BaseObject obj, StringProperty uuid "
+                        + "where obj.className = :class and uuid.id.id = obj.id and uuid.id.name = :uuid",
+                    Query.HQL);
+            query.bindValue("class", MigrationHistoryClassDocumentInitializer.CLASS_REFERENCE);
+            query.bindValue("uuid", MigrationHistoryClassDocumentInitializer.UUID_PROPERTY);
+            List<Object[]> results = query.execute();
+
+            List<String> storeSpacePath = Arrays.asList(DefaultMigrationHistoryStore.MIGRATOR_SPACE_NAME,
+                DefaultMigrationHistoryStore.STORE_SPACE_NAME);
+            List<MigrationHistoryEntry> entries = new ArrayList<>(results.size());
+            for (Object[] result : results) {
+                // History documents are stored in <MIGRATOR_SPACE_NAME>.<STORE_SPACE_NAME>.<EXTENSION_ID>.<VERSION>
+                DocumentReference documentReference = documentReferenceResolver.resolve((String) result[0]);
+                List<SpaceReference> spaces = documentReference.getSpaceReferences();
+                if (spaces.size() == storeSpacePath.size() + 1
+                    && storeSpacePath.get(0).equals(spaces.get(0).getName())
+                    && storeSpacePath.get(1).equals(spaces.get(1).getName())) {
+                    entries.add(new MigrationHistoryEntry(wiki, documentReference.getLastSpaceReference().getName(),
+                        documentReference.getName(), (String) result[1]));
+                }
+            }
+
+            saveEntries(entries,
+                String.format("Failed to import the migration history of the wiki [%s]", wiki));
+            logger.info("Imported [{}] migrations from the XObject history of the wiki [{}].", entries.size(), wiki);
+
+            return entries.size();
+        } catch (QueryException e) {
+            throw new MigrationException(
+                String.format("Failed to import the migration history of the wiki [%s]", wiki), e);
+        }
+    }
+
+    /**
+     * Make sure that the history table contains the history previously stored in XObjects in the current wiki. This
+     * is only done once per wiki.
+     */
+    private synchronized void prepareWiki(XWikiContext xContext) throws MigrationException
+    {
+        String wiki = xContext.getWikiId();
+
+        if (!preparedWikis.contains(wiki)) {
+            long entryCount = execute(session -> (Long) session.createQuery(
+                    "select count(*) from MigrationHistoryEntry entry where entry.wiki = :wiki")
+                .setParameter(WIKI_PARAMETER, wiki)
+                .uniqueResult(),
+                String.format("Failed to prepare the migration history table of the wiki [%s]", wiki));
+
+            if (entryCount == 0) {
+                importDocumentHistory();
+            }
+
+            preparedWikis.add(wiki);
+        }
+    }
+
+    private void saveEntries(List<MigrationHistoryEntry> entries, String errorMessage) throws MigrationException
+    {
+        if (!entries.isEmpty()) {
+            // All the entries are inserted in the same transaction
+            execute(session -> {
+                for (MigrationHistoryEntry entry : entries) {
+                    if (session.get(MigrationHistoryEntry.class, entry.getId()) == null) {
+                        session.save(entry);
+                    }
+                }
+                return null;
+            }, errorMessage);
+        }
+    }
+
+    /**
+     * Run the given callback in a transaction of the history session factory.
+     */
+    private <T> T execute(Function<Session, T> callback, String errorMessage) throws MigrationException
+    {
+        Session session = null;
+        Transaction transaction = null;
+        try {
+            session = getHistorySessionFactory().openSession();
+            transaction = session.beginTransaction();
+            T result = callback.apply(session);
+            transaction.commit();
+
+            return result;
+        } catch (HibernateException e) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw new MigrationException(errorMessage, e);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Build the session factory of the history table, and create or update the table, the first time the store is
+     * used.
+     */
+    private synchronized SessionFactory getHistorySessionFactory() throws MigrationException
+    {
+        if (historySessionFactory == null) {
+            // Only the connection settings of the wiki are reused : the configuration of the wiki (and the session
+            // factory built from it) must not be modified while the wiki is running
+            Configuration configuration = new Configuration();
+            Properties properties = new Properties();
+            properties.putAll(sessionFactory.getConfiguration().getProperties());
+            configuration.setProperties(properties);
+
+            try (InputStream mapping = getClass().getClassLoader().getResourceAsStream(MAPPING_RESOURCE)) {
+                configuration.addInputStream(mapping);
+
+                new SchemaUpdate(configuration).execute(false, true);
+                historySessionFactory = configuration.buildSessionFactory();
+            } catch (Exception e) {
+                throw new MigrationException(
+                    String.format("Failed to initialize the migration history table from [%s]", MAPPING_RESOURCE), e);
+            }
+        }
+
+        return historySessionFactory;
+    }
+
+    private long computeEntryId(String wiki, AbstractMigrationDescriptor migrationDescriptor)
+    {
+        ExtensionId extensionId = migrationDescriptor.getExtensionId();
+        return MigrationHistoryEntry.computeId(wiki, extensionId.getId(), extensionId.getVersion().getValue(),
+            migrationDescriptor.getMigrationUUID());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.LocalDocumentReference;
+
+import com.xpn.xwiki.doc.AbstractMandatoryClassInitializer;
+import com.xpn.xwiki.objects.classes.BaseClass;
+
+/**
+ * This class helps defining the progress of a migration that has not been completed yet.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+@Named("Migrator.Code.MigrationCheckpointClass")
+public class MigrationCheckpointClassDocumentInitializer extends AbstractMandatoryClassInitializer
+{
+    /**
+     * The name of the XClass.
+     */
+    public static final String CLASS_NAME = "MigrationCheckpointClass";
+
+    /**
+     * The XClass reference.
+     */
+    public static final String CLASS_REFERENCE = String.format("%s.%s.%s",
+            DefaultMigrationHistoryStore.MIGRATOR_SPACE_NAME,
+            DefaultMigrationHistoryStore.CODE_SPACE_NAME, CLASS_NAME);
+
+    /**
+     * The name of the property holding the key of the last processed element.
+     */
+    public static final String LAST_KEY_PROPERTY = "lastKey";
+
+    /**
+     * The name of the property holding the number of processed elements.
+     */
+    public static final String PROCESSED_COUNT_PROPERTY = "processedCount";
+
+    private static final List<String> SPACE_PATH = Arrays.asList(
+            DefaultMigrationHistoryStore.MIGRATOR_SPACE_NAME,
+            DefaultMigrationHistoryStore.CODE_SPACE_NAME);
+
+    /**
+     * Builds a new {@link MigrationCheckpointClassDocumentInitializer}.
+     */
+    public MigrationCheckpointClassDocumentInitializer()
+    {
+        super(new LocalDocumentReference(SPACE_PATH, CLASS_NAME));
+    }
+
+    @Override
+    protected void createClass(BaseClass xclass)
+    {
+        xclass.addTextAreaField(LAST_KEY_PROPERTY, "Last processed key", 80, 2);
+        xclass.addNumberField(PROCESSED_COUNT_PROPERTY, "Number of processed elements", 10, "long");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
+
+/**
+ * Keeps in memory the UUIDs of the migrations applied for a given extension on a given wiki, so that
+ * {@link DefaultMigrationHistoryStore} doesn't need to query the database on every availability check.
+ *
+ * Entries are identified by the space holding the history documents of the extension
+ * (<MIGRATOR_SPACE_NAME>.<STORE_SPACE_NAME>.<EXTENSION_ID>), which makes them specific to both the wiki and the
+ * extension.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = MigrationHistoryCache.class)
+@Singleton
+public class MigrationHistoryCache implements Initializable, Disposable
+{
+    private static final String CACHE_ID = "migrator.history";
+
+    private static final int CACHE_SIZE = 500;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    private Cache<Set<String>> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            cache = cacheManager.createNewCache(new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the migration history cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (cache != null) {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * @param extensionSpaceReference the space holding the history of the extension
+     * @return the cached set of applied migration UUIDs, or null if the space is not cached
+     */
+    public Set<String> get(SpaceReference extensionSpaceReference)
+    {
+        return cache.get(entityReferenceSerializer.serialize(extensionSpaceReference));
+    }
+
+    /**
+     * @param extensionSpaceReference the space holding the history of the extension
+     * @param appliedMigrations the set of applied migration UUIDs to cache
+     */
+    public void set(SpaceReference extensionSpaceReference, Set<String> appliedMigrations)
+    {
+        cache.set(entityReferenceSerializer.serialize(extensionSpaceReference), appliedMigrations);
+    }
+
+    /**
+     * Remove the given space from the cache. This should be called every time the history of the extension changes.
+     *
+     * @param extensionSpaceReference the space holding the history of the extension
+     */
+    public void invalidate(SpaceReference extensionSpaceReference)
+    {
+        cache.remove(entityReferenceSerializer.serialize(extensionSpaceReference));
+    }
+}
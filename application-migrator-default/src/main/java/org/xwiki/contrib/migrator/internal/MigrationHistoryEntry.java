@@ -0,0 +1,163 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import com.xpn.xwiki.util.Util;
+
+/**
+ * A row of the migration history table used by {@link HibernateMigrationHistoryStore}. Each entry records one
+ * migration (identified by its UUID) applied on a given wiki for a given extension version.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class MigrationHistoryEntry
+{
+    private long id;
+
+    private String wiki;
+
+    private String extensionId;
+
+    private String extensionVersion;
+
+    private String uuid;
+
+    /**
+     * Default constructor, needed by Hibernate.
+     */
+    public MigrationHistoryEntry()
+    {
+    }
+
+    /**
+     * Builds a new {@link MigrationHistoryEntry}.
+     *
+     * @param wiki the wiki on which the migration has been applied
+     * @param extensionId the id of the extension providing the migration
+     * @param extensionVersion the version of the extension providing the migration
+     * @param uuid the UUID of the migration
+     */
+    public MigrationHistoryEntry(String wiki, String extensionId, String extensionVersion, String uuid)
+    {
+        this.wiki = wiki;
+        this.extensionId = extensionId;
+        this.extensionVersion = extensionVersion;
+        this.uuid = uuid;
+        this.id = computeId(wiki, extensionId, extensionVersion, uuid);
+    }
+
+    /**
+     * Compute the identifier of an entry. The identifier only depends on the key of the entry so that recording
+     * the same migration twice always targets the same row.
+     *
+     * @param wiki the wiki on which the migration has been applied
+     * @param extensionId the id of the extension providing the migration
+     * @param extensionVersion the version of the extension providing the migration
+     * @param uuid the UUID of the migration
+     * @return the identifier of the entry
+     */
+    public static long computeId(String wiki, String extensionId, String extensionVersion, String uuid)
+    {
+        // Prefix each part with its length so that different keys cannot produce the same string
+        return Util.getHash(String.format("%d:%s%d:%s%d:%s%d:%s", wiki.length(), wiki, extensionId.length(),
+            extensionId, extensionVersion.length(), extensionVersion, uuid.length(), uuid));
+    }
+
+    /**
+     * @return the identifier of the entry
+     */
+    public long getId()
+    {
+        return id;
+    }
+
+    /**
+     * @param id the identifier of the entry
+     */
+    public void setId(long id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return the wiki on which the migration has been applied
+     */
+    public String getWiki()
+    {
+        return wiki;
+    }
+
+    /**
+     * @param wiki the wiki on which the migration has been applied
+     */
+    public void setWiki(String wiki)
+    {
+        this.wiki = wiki;
+    }
+
+    /**
+     * @return the id of the extension providing the migration
+     */
+    public String getExtensionId()
+    {
+        return extensionId;
+    }
+
+    /**
+     * @param extensionId the id of the extension providing the migration
+     */
+    public void setExtensionId(String extensionId)
+    {
+        this.extensionId = extensionId;
+    }
+
+    /**
+     * @return the version of the extension providing the migration
+     */
+    public String getExtensionVersion()
+    {
+        return extensionVersion;
+    }
+
+    /**
+     * @param extensionVersion the version of the extension providing the migration
+     */
+    public void setExtensionVersion(String extensionVersion)
+    {
+        this.extensionVersion = extensionVersion;
+    }
+
+    /**
+     * @return the UUID of the migration
+     */
+    public String getUuid()
+    {
+        return uuid;
+    }
+
+    /**
+     * @param uuid the UUID of the migration
+     */
+    public void setUuid(String uuid)
+    {
+        this.uuid = uuid;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Invalidates the {@link MigrationHistoryCache} when a document of the migration history store is modified, either
+ * through {@link DefaultMigrationHistoryStore} or directly in the wiki.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+@Named(MigrationHistoryStoreListener.LISTENER_NAME)
+public class MigrationHistoryStoreListener extends AbstractEventListener
+{
+    /**
+     * The listener name.
+     */
+    public static final String LISTENER_NAME = "MigrationHistoryStoreListener";
+
+    private static final List<String> STORE_SPACE_PATH = Arrays.asList(
+            DefaultMigrationHistoryStore.MIGRATOR_SPACE_NAME,
+            DefaultMigrationHistoryStore.STORE_SPACE_NAME);
+
+    @Inject
+    private MigrationHistoryCache migrationHistoryCache;
+
+    /**
+     * Build a new {@link MigrationHistoryStoreListener}.
+     */
+    public MigrationHistoryStoreListener()
+    {
+        super(LISTENER_NAME, new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        DocumentReference documentReference = ((XWikiDocument) source).getDocumentReference();
+
+        // History documents are stored in <MIGRATOR_SPACE_NAME>.<STORE_SPACE_NAME>.<EXTENSION_ID>.<VERSION>
+        List<SpaceReference> spaces = documentReference.getSpaceReferences();
+        if (spaces.size() == STORE_SPACE_PATH.size() + 1) {
+            for (int i = 0; i < STORE_SPACE_PATH.size(); i++) {
+                if (!STORE_SPACE_PATH.get(i).equals(spaces.get(i).getName())) {
+                    return;
+                }
+            }
+
+            migrationHistoryCache.invalidate(documentReference.getLastSpaceReference());
+        }
+    }
+}
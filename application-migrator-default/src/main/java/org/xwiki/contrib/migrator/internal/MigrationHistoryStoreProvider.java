@@ -20,15 +20,24 @@
 package org.xwiki.contrib.migrator.internal;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.contrib.migrator.MigrationHistoryStore;
 
 /**
  * This is the default provider of MigrationHistoryStore.
  *
+ * The store implementation can be chosen through the {@value #STORE_CONFIGURATION_KEY} property of
+ * {@code xwiki.properties}, which should contain the hint of the {@link MigrationHistoryStore} component to use
+ * (for example {@value HibernateMigrationHistoryStore#HINT}). The default store is used if the property is not set.
+ *
  * @version $Id$
  * @since 1.1
  */
@@ -36,12 +45,39 @@ import org.xwiki.contrib.migrator.MigrationHistoryStore;
 @Singleton
 public class MigrationHistoryStoreProvider implements Provider<MigrationHistoryStore>
 {
+    /**
+     * The configuration property used to select the history store.
+     */
+    public static final String STORE_CONFIGURATION_KEY = "migrator.history.store";
+
     @Inject
     private MigrationHistoryStore migrationHistoryStore;
 
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @Inject
+    private Logger logger;
+
     @Override
     public MigrationHistoryStore get()
     {
+        String hint = configurationSource.getProperty(STORE_CONFIGURATION_KEY, "default");
+
+        if (!"default".equals(hint)) {
+            try {
+                return componentManagerProvider.get().getInstance(MigrationHistoryStore.class, hint);
+            } catch (ComponentLookupException e) {
+                logger.error("Failed to get the migration history store [{}], falling back on the default one.",
+                    hint, e);
+            }
+        }
+
         return migrationHistoryStore;
     }
 }
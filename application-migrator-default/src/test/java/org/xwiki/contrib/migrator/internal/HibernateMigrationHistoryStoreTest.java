@@ -0,0 +1,181 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import javax.inject.Provider;
+
+import org.hibernate.cfg.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.contrib.migrator.AbstractMigrationDescriptor;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.store.hibernate.HibernateSessionFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link HibernateMigrationHistoryStore}, run against an in-memory database.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class HibernateMigrationHistoryStoreTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<HibernateMigrationHistoryStore> mocker =
+            new MockitoComponentMockingRule<>(HibernateMigrationHistoryStore.class);
+
+    private static final ExtensionId EXTENSION_ID = new ExtensionId("dummy-extension", "1.0");
+
+    private XWikiContext xContext;
+
+    private Query historyQuery;
+
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver");
+        configuration.setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:migrator" + System.nanoTime());
+        configuration.setProperty("hibernate.connection.username", "sa");
+        configuration.setProperty("hibernate.connection.password", "");
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+        HibernateSessionFactory sessionFactory = mocker.getInstance(HibernateSessionFactory.class);
+        when(sessionFactory.getConfiguration()).thenReturn(configuration);
+
+        xContext = mock(XWikiContext.class);
+        when(xContext.getWikiId()).thenReturn("xwiki");
+        Provider<XWikiContext> xWikiContextProvider = mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xWikiContextProvider.get()).thenReturn(xContext);
+
+        historyQuery = mock(Query.class);
+        when(historyQuery.execute()).thenReturn(Collections.emptyList());
+        QueryManager queryManager = mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(historyQuery);
+
+        documentReferenceResolver = mocker.getInstance(DocumentReferenceResolver.TYPE_STRING);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        mocker.getComponentUnderTest().dispose();
+    }
+
+    @Test
+    public void addAppliedMigrations() throws Exception
+    {
+        AbstractMigrationDescriptor migration1 = createMigration("migration1");
+        AbstractMigrationDescriptor migration2 = createMigration("migration2");
+
+        mocker.getComponentUnderTest().addAppliedMigrations(Arrays.asList(migration1, migration2));
+        // Recording a migration twice should not fail nor create a second entry
+        mocker.getComponentUnderTest().addAppliedMigration(migration1);
+
+        assertTrue(mocker.getComponentUnderTest().isAppliedMigration(migration1));
+        assertTrue(mocker.getComponentUnderTest().isAppliedMigration(migration2));
+        assertFalse(mocker.getComponentUnderTest().isAppliedMigration(createMigration("migration3")));
+        assertEquals(new HashSet<>(Arrays.asList(migration1.getMigrationUUID(), migration2.getMigrationUUID())),
+            mocker.getComponentUnderTest().getAppliedMigrationsForExtensionId(EXTENSION_ID));
+    }
+
+    @Test
+    public void appliedMigrationsAreRecordedPerWiki() throws Exception
+    {
+        AbstractMigrationDescriptor migration = createMigration("migration");
+        mocker.getComponentUnderTest().addAppliedMigration(migration);
+
+        when(xContext.getWikiId()).thenReturn("subwiki");
+
+        assertFalse(mocker.getComponentUnderTest().isAppliedMigration(migration));
+        assertTrue(mocker.getComponentUnderTest().getAppliedMigrationsForExtensionId(EXTENSION_ID).isEmpty());
+    }
+
+    @Test
+    public void importDocumentHistoryOnFirstUse() throws Exception
+    {
+        mockDocumentHistory();
+
+        // Only the documents of the history space are imported
+        assertEquals(Collections.singleton("uuid1"),
+            mocker.getComponentUnderTest().getAppliedMigrationsForExtensionId(EXTENSION_ID));
+
+        // The history is only imported once per wiki
+        mocker.getComponentUnderTest().getAppliedMigrationsForExtensionId(EXTENSION_ID);
+        verify(historyQuery, times(1)).execute();
+
+        // Importing the history again does not duplicate the entries
+        assertEquals(1, mocker.getComponentUnderTest().importDocumentHistory());
+        assertEquals(Collections.singleton("uuid1"),
+            mocker.getComponentUnderTest().getAppliedMigrationsForExtensionId(EXTENSION_ID));
+    }
+
+    @Test
+    public void importDocumentHistoryIsSkippedWhenTheWikiHasEntries() throws Exception
+    {
+        mockDocumentHistory();
+        assertEquals(1, mocker.getComponentUnderTest().importDocumentHistory());
+
+        // The table already holds entries for the wiki, so the XObject history is not imported again on first use
+        mocker.getComponentUnderTest().addAppliedMigration(createMigration("migration"));
+        verify(historyQuery, times(1)).execute();
+    }
+
+    private void mockDocumentHistory() throws Exception
+    {
+        when(historyQuery.execute()).thenReturn(Arrays.asList(
+            new Object[] { "Migrator.Store.dummy-extension.1\\.0", "uuid1" },
+            new Object[] { "Main.WebHome", "uuid2" }));
+        when(documentReferenceResolver.resolve("Migrator.Store.dummy-extension.1\\.0")).thenReturn(
+            new DocumentReference("xwiki", Arrays.asList("Migrator", "Store", "dummy-extension"), "1.0"));
+        when(documentReferenceResolver.resolve("Main.WebHome")).thenReturn(
+            new DocumentReference("xwiki", "Main", "WebHome"));
+    }
+
+    private AbstractMigrationDescriptor createMigration(String name)
+    {
+        return new AbstractMigrationDescriptor(EXTENSION_ID, name, "", null)
+        {
+        };
+    }
+}
@@ -31,6 +31,33 @@ import org.xwiki.contrib.migrator.MigrationParameters;
  */
 public class ClassMigrationParameters implements MigrationParameters<ClassMigrationType>
 {
+    /**
+     * The default number of documents fetched at once when looking for the documents to migrate.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The default number of workers used to migrate documents : by default, documents are migrated sequentially.
+     */
+    public static final int DEFAULT_PARALLELISM = 1;
+
+    /**
+     * The default number of documents saved in the same transaction : by default, each document is saved in its own
+     * transaction.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1;
+
+    /**
+     * The default number of documents migrated between two checkpoints : by default, no checkpoint is saved.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 0;
+
+    /**
+     * The default number of documents waiting between two stages of the migration pipeline : by default, the
+     * documents are loaded, migrated and saved one after the other without any pipeline.
+     */
+    public static final int DEFAULT_PIPELINE_QUEUE_SIZE = 0;
+
     private boolean inPlace;
 
     private String oldClass;
@@ -47,6 +74,26 @@ public class ClassMigrationParameters implements MigrationParameters<ClassMigrat
 
     private boolean createNewVersion;
 
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    private boolean directStoreRename;
+
+    private boolean bypassDocumentCache;
+
+    private int pipelineQueueSize = DEFAULT_PIPELINE_QUEUE_SIZE;
+
+    private boolean quietSave;
+
+    private boolean deferredReindex;
+
+    private boolean objectsOnlySave;
+
     /**
      * Constructs a new {@link ClassMigrationParameters}.
      *
@@ -78,6 +125,112 @@ public class ClassMigrationParameters implements MigrationParameters<ClassMigrat
         this.createNewVersion = createNewVersion;
     }
 
+    /**
+     * @param pageSize the number of documents fetched at once when looking for the documents to migrate ; if not
+     * strictly positive, {@link #DEFAULT_PAGE_SIZE} is used
+     * @since 1.2
+     */
+    public void setPageSize(int pageSize)
+    {
+        this.pageSize = (pageSize > 0) ? pageSize : DEFAULT_PAGE_SIZE;
+    }
+
+    /**
+     * @param parallelism the number of workers migrating documents concurrently ; if not strictly positive,
+     * {@link #DEFAULT_PARALLELISM} is used
+     * @since 1.2
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = (parallelism > 0) ? parallelism : DEFAULT_PARALLELISM;
+    }
+
+    /**
+     * @param batchSize the number of migrated documents saved in the same transaction ; if not strictly positive,
+     * {@link #DEFAULT_BATCH_SIZE} is used
+     * @since 1.2
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = (batchSize > 0) ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * @param checkpointInterval the minimum number of documents migrated between two saved checkpoints, allowing an
+     * interrupted migration to resume where it stopped ; if not strictly positive, no checkpoint is saved. Setting
+     * checkpoints disables the pipeline (see {@link #setPipelineQueueSize(int)}) and keeps the migration out of the
+     * groups of migrations applied in a single pass, since neither of them can resume
+     * @since 1.2
+     */
+    public void setCheckpointInterval(int checkpointInterval)
+    {
+        this.checkpointInterval = Math.max(checkpointInterval, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * @param directStoreRename whether in place migrations that only rename properties, without changing their type,
+     * should be done directly in the database instead of loading and saving each document
+     * @since 1.2
+     */
+    public void setDirectStoreRename(boolean directStoreRename)
+    {
+        this.directStoreRename = directStoreRename;
+    }
+
+    /**
+     * @param bypassDocumentCache whether the migrated documents should be loaded straight from the database, so that
+     * the migration does not evict the documents in use from the shared document cache
+     * @since 1.2
+     */
+    public void setBypassDocumentCache(boolean bypassDocumentCache)
+    {
+        this.bypassDocumentCache = bypassDocumentCache;
+    }
+
+    /**
+     * @param pipelineQueueSize the maximum number of documents waiting between two stages of the migration pipeline,
+     * in which the next documents are loaded while the current ones are migrated and saved ; if not strictly
+     * positive, no pipeline is used
+     * @since 1.2
+     */
+    public void setPipelineQueueSize(int pipelineQueueSize)
+    {
+        this.pipelineQueueSize = Math.max(pipelineQueueSize, DEFAULT_PIPELINE_QUEUE_SIZE);
+    }
+
+    /**
+     * @param quietSave whether the documents should be saved in quiet mode, as part of a bulk migration that the
+     * listeners of the document events can recognize in order to skip or defer their work
+     * @since 1.2
+     */
+    public void setQuietSave(boolean quietSave)
+    {
+        this.quietSave = quietSave;
+    }
+
+    /**
+     * @param deferredReindex whether the documents should only be reindexed in the search engine once the migration is
+     * over, in batches, instead of one by one as they are saved ; the documents still send their usual events. This
+     * requires a migration indexer to be installed (such as the Solr one), the documents being indexed as they are
+     * saved otherwise
+     * @since 1.2
+     */
+    public void setDeferredReindex(boolean deferredReindex)
+    {
+        this.deferredReindex = deferredReindex;
+    }
+
+    /**
+     * @param objectsOnlySave whether only the rows of the migrated XObjects should be written, leaving the document
+     * itself and its history untouched ; only used when no new version is created and the migration does not change
+     * the document title or content
+     * @since 1.2
+     */
+    public void setObjectsOnlySave(boolean objectsOnlySave)
+    {
+        this.objectsOnlySave = objectsOnlySave;
+    }
+
     /**
      * @return whether the migration should be done in place (on the same XClass)
      */
@@ -141,4 +294,96 @@ public class ClassMigrationParameters implements MigrationParameters<ClassMigrat
     {
         return createNewVersion;
     }
+
+    /**
+     * @return the number of documents fetched at once when looking for the documents to migrate
+     * @since 1.2
+     */
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * @return the number of workers migrating documents concurrently
+     * @since 1.2
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * @return the number of migrated documents saved in the same transaction
+     * @since 1.2
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * @return the minimum number of documents migrated between two saved checkpoints, 0 if checkpoints are disabled
+     * @since 1.2
+     */
+    public int getCheckpointInterval()
+    {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return whether in place migrations that only rename properties should be done directly in the database ; the
+     * regular migration is used when this is not possible
+     * @since 1.2
+     */
+    public boolean isDirectStoreRename()
+    {
+        return directStoreRename;
+    }
+
+    /**
+     * @return whether the migrated documents should be loaded straight from the database
+     * @since 1.2
+     */
+    public boolean isBypassDocumentCache()
+    {
+        return bypassDocumentCache;
+    }
+
+    /**
+     * @return the maximum number of documents waiting between two stages of the migration pipeline, 0 if the pipeline
+     * is disabled
+     * @since 1.2
+     */
+    public int getPipelineQueueSize()
+    {
+        return pipelineQueueSize;
+    }
+
+    /**
+     * @return whether the documents should be saved in quiet mode
+     * @since 1.2
+     */
+    public boolean isQuietSave()
+    {
+        return quietSave;
+    }
+
+    /**
+     * @return whether the reindex of the migrated documents should be deferred to the end of the migration
+     * @since 1.2
+     */
+    public boolean isDeferredReindex()
+    {
+        return deferredReindex;
+    }
+
+    /**
+     * @return whether only the rows of the migrated XObjects should be written
+     * @since 1.2
+     */
+    public boolean isObjectsOnlySave()
+    {
+        return objectsOnlySave;
+    }
 }
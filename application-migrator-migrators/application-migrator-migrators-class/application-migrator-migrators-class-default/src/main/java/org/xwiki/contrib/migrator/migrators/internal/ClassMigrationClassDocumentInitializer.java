@@ -93,10 +93,62 @@ public class ClassMigrationClassDocumentInitializer extends AbstractMigrationCla
      */
     public static final String CREATE_NEW_VERSION_PROPERTY = "createNewVersion";
 
+    /**
+     * The number of documents fetched at once when looking for the documents to migrate.
+     */
+    public static final String PAGE_SIZE_PROPERTY = "pageSize";
+
+    /**
+     * The number of workers migrating documents concurrently.
+     */
+    public static final String PARALLELISM_PROPERTY = "parallelism";
+
+    /**
+     * The number of migrated documents saved in the same transaction.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "batchSize";
+
+    /**
+     * The number of migrated documents between two checkpoints.
+     */
+    public static final String CHECKPOINT_INTERVAL_PROPERTY = "checkpointInterval";
+
+    /**
+     * Should property renames be done directly in the database ?
+     */
+    public static final String DIRECT_STORE_RENAME_PROPERTY = "directStoreRename";
+
+    /**
+     * Should the migrated documents be loaded without going through the document cache ?
+     */
+    public static final String BYPASS_DOCUMENT_CACHE_PROPERTY = "bypassDocumentCache";
+
+    /**
+     * The number of documents waiting between two stages of the migration pipeline.
+     */
+    public static final String PIPELINE_QUEUE_SIZE_PROPERTY = "pipelineQueueSize";
+
+    /**
+     * Should the migrated documents be saved in quiet mode ?
+     */
+    public static final String QUIET_SAVE_PROPERTY = "quietSave";
+
+    /**
+     * Should the reindex of the migrated documents be deferred to the end of the migration ?
+     */
+    public static final String DEFERRED_REINDEX_PROPERTY = "deferredReindex";
+
+    /**
+     * Should only the migrated XObjects be written, without saving the documents ?
+     */
+    public static final String OBJECTS_ONLY_SAVE_PROPERTY = "objectsOnlySave";
+
     private static final List<String> SPACE_PATH = Arrays.asList("Migrator", "Migrators");
 
     private static final String CHECKBOX_DISPLAY = "checkbox";
 
+    private static final String INTEGER_TYPE = "integer";
+
     /**
      * Builds a new {@link ClassMigrationClassDocumentInitializer}.
      */
@@ -121,5 +173,21 @@ public class ClassMigrationClassDocumentInitializer extends AbstractMigrationCla
 
         xclass.addTextField(SAVE_COMMENT_PROPERTY, "Save comment", 256);
         xclass.addBooleanField(CREATE_NEW_VERSION_PROPERTY, "Create a new document version ?", CHECKBOX_DISPLAY, true);
+
+        xclass.addNumberField(PAGE_SIZE_PROPERTY, "Number of documents fetched at once", 10, INTEGER_TYPE);
+        xclass.addNumberField(PARALLELISM_PROPERTY, "Number of documents migrated concurrently", 10, INTEGER_TYPE);
+        xclass.addNumberField(BATCH_SIZE_PROPERTY, "Number of documents saved in the same transaction", 10,
+            INTEGER_TYPE);
+        xclass.addNumberField(CHECKPOINT_INTERVAL_PROPERTY, "Number of documents migrated between two checkpoints", 10,
+            INTEGER_TYPE);
+        xclass.addBooleanField(DIRECT_STORE_RENAME_PROPERTY, "Rename properties directly in the database ?",
+            CHECKBOX_DISPLAY);
+        xclass.addBooleanField(BYPASS_DOCUMENT_CACHE_PROPERTY, "Bypass the document cache ?", CHECKBOX_DISPLAY);
+        xclass.addNumberField(PIPELINE_QUEUE_SIZE_PROPERTY, "Number of documents waiting between two pipeline stages",
+            10, INTEGER_TYPE);
+        xclass.addBooleanField(QUIET_SAVE_PROPERTY, "Save the documents in quiet mode ?", CHECKBOX_DISPLAY);
+        xclass.addBooleanField(DEFERRED_REINDEX_PROPERTY, "Reindex the documents at the end of the migration ?",
+            CHECKBOX_DISPLAY);
+        xclass.addBooleanField(OBJECTS_ONLY_SAVE_PROPERTY, "Only save the migrated objects ?", CHECKBOX_DISPLAY);
     }
 }
@@ -19,25 +19,55 @@
  */
 package org.xwiki.contrib.migrator.migrators.internal;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.contrib.migrator.MigrationCheckpoint;
+import org.xwiki.contrib.migrator.MigrationCheckpointStore;
+import org.xwiki.contrib.migrator.MigrationController;
+import org.xwiki.contrib.migrator.MigrationEstimate;
 import org.xwiki.contrib.migrator.MigrationException;
 import org.xwiki.contrib.migrator.MigrationExecutor;
 import org.xwiki.contrib.migrator.MigrationStatus;
+import org.xwiki.contrib.migrator.event.BulkMigrationFinishedEvent;
+import org.xwiki.contrib.migrator.event.BulkMigrationStartedEvent;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
@@ -48,10 +78,11 @@ import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
-import com.xpn.xwiki.objects.BaseProperty;
 import com.xpn.xwiki.objects.classes.BaseClass;
 import com.xpn.xwiki.objects.classes.ComputedFieldClass;
 import com.xpn.xwiki.objects.meta.ComputedFieldMetaClass;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
 
 /**
  * Executes migrations of type {@link ClassMigrationType}.
@@ -64,11 +95,9 @@ import com.xpn.xwiki.objects.meta.ComputedFieldMetaClass;
 public class ClassMigrationExecutor implements MigrationExecutor<ClassMigrationDescriptor>
 {
     /**
-     * Properties coming from the XWiki document itself, that are not stored as XProperties.
+     * The number of documents migrated without being saved when estimating the cost of a migration.
      */
-    private static final List<String> DOCUMENT_PROPERTIES = Arrays.asList(
-        ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY,
-        ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY);
+    private static final int ESTIMATE_SAMPLE_SIZE = 5;
 
     @Inject
     private QueryManager queryManager;
@@ -82,6 +111,52 @@ public class ClassMigrationExecutor implements MigrationExecutor<ClassMigrationD
     @Inject
     private Logger logger;
 
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    @Named("hibernate")
+    private XWikiStoreInterface hibernateStore;
+
+    @Inject
+    private Provider<MigrationCheckpointStore> migrationCheckpointStoreProvider;
+
+    @Inject
+    private StorePropertyRenamer storePropertyRenamer;
+
+    @Inject
+    private MigrationThrottle migrationThrottle;
+
+    @Inject
+    private MigrationDocumentLoader migrationDocumentLoader;
+
+    @Inject
+    private ClassMigrationPlanner classMigrationPlanner;
+
+    @Inject
+    private MigrationController migrationController;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    @Inject
+    private MigrationReindexer migrationReindexer;
+
+    @Inject
+    private StoreObjectSaver storeObjectSaver;
+
+    @Inject
+    private StoreDocumentNotifier storeDocumentNotifier;
+
+    @Inject
+    private StoreDocumentSaver storeDocumentSaver;
+
+    @Inject
+    private Provider<MigrationExecutor<ClassMigrationDescriptor>> classMigrationExecutorProvider;
+
     // As we're instantiating the executor per lookup (and not as a singleton), we can have the freedom to
     // store private attributes without them interfering with other executions.
 
@@ -99,6 +174,61 @@ public class ClassMigrationExecutor implements MigrationExecutor<ClassMigrationD
 
     private Map<String, String> classPropertiesMapping;
 
+    /**
+     * The properties mapping compiled into copy operations, shared by all the migrated XObjects.
+     */
+    private PropertyMappingPlan propertyMappingPlan;
+
+    /**
+     * A copy of {@link #propertyMappingPlan} applied to XObjects loaded in bulk to find out which documents an in
+     * place migration would change, or null if this cannot be known without loading the documents. It is kept apart
+     * so that the values that cannot be converted are not counted twice.
+     */
+    private PropertyMappingPlan changeDetectionPlan;
+
+    /**
+     * The definition of the XClass of the migrated XObjects.
+     */
+    private BaseClass newXClass;
+
+    /**
+     * The pool of workers used to migrate documents concurrently, only used if the migration parallelism is greater
+     * than 1.
+     */
+    private ExecutorService workerPool;
+
+    /**
+     * The documents that could not be migrated by the workers, along with the cause of the failure.
+     */
+    private Map<String, String> failedDocuments;
+
+    /**
+     * The number of documents saved by the migration.
+     */
+    private AtomicLong modifiedDocuments;
+
+    /**
+     * The number of documents not saved as the migration did not change anything in them.
+     */
+    private AtomicLong skippedDocuments;
+
+    /**
+     * The number of documents saved by the migration in quiet mode, or null when not saving in quiet mode.
+     */
+    private AtomicLong quietlySavedDocuments;
+
+    /**
+     * The documents saved by the migration, only collected when their reindex is deferred to the end of the migration
+     * and a {@link MigrationIndexer} is available.
+     */
+    private ReindexSpool reindexSpool;
+
+    /**
+     * The XClasses of the XObjects to write when only the migrated XObjects are saved, or null if the documents are
+     * saved as a whole.
+     */
+    private List<DocumentReference> objectsOnlySaveClasses;
+
     @Override
     public MigrationStatus execute(ClassMigrationDescriptor migrationDescriptor) throws MigrationException
     {
@@ -107,7 +237,484 @@ public class ClassMigrationExecutor implements MigrationExecutor<ClassMigrationD
           the migration and mark it as done or not.
          */
 
-        // Initialize the essential attributes of our executor
+        initialize(migrationDescriptor);
+
+        // Step 1 : Migrate the XObjects (if needed, delete the old XObjects)
+        if (migrationParameters.isDirectStoreRename()) {
+            MigrationStatus renameStatus = renameInStore();
+            if (renameStatus != null) {
+                return renameStatus;
+            }
+        }
+
+        failedDocuments = new ConcurrentHashMap<>();
+        modifiedDocuments = new AtomicLong();
+        skippedDocuments = new AtomicLong();
+        boolean completed;
+        try {
+            // Set up within the try so that whatever has been started is always closed, even if the setup fails
+            if (migrationParameters.getParallelism() > 1) {
+                workerPool = Executors.newFixedThreadPool(migrationParameters.getParallelism(),
+                    new BasicThreadFactory.Builder().namingPattern("Class migration worker %d").daemon(true).build());
+            }
+            if (migrationParameters.isQuietSave()) {
+                beginQuietSaves(migrationDescriptor, migrationDescriptor.getMigrationUUID());
+            }
+            if (migrationParameters.isDeferredReindex()) {
+                beginDeferredReindex();
+            }
+            if (canSaveObjectsOnly()) {
+                objectsOnlySaveClasses = Collections.singletonList(newClassReference);
+            }
+
+            // The pipeline has no safe watermark to resume from, so the migrations relying on checkpoints never use it
+            if (workerPool == null && migrationParameters.getPipelineQueueSize() > 0
+                && migrationParameters.getCheckpointInterval() == 0) {
+                completed = migrateAllXObjectsPipelined();
+            } else {
+                completed = migrateAllXObjects();
+            }
+        } finally {
+            if (workerPool != null) {
+                workerPool.shutdownNow();
+            }
+            if (quietlySavedDocuments != null) {
+                endQuietSaves(migrationDescriptor);
+            }
+            if (reindexSpool != null) {
+                endDeferredReindex();
+            }
+        }
+
+        if (!completed) {
+            // Keep the old XClass and the checkpoint so that the migration can be run again later
+            return getCanceledStatus();
+        }
+
+        if (!failedDocuments.isEmpty()) {
+            // Keep the old XClass so that the migration can be run again for the documents that failed
+            return new MigrationStatus(MigrationStatus.Status.FAILURE, String.format(
+                "Failed to migrate [%d] documents, [%d] documents modified, [%d] unchanged documents skipped%s: %s",
+                failedDocuments.size(), modifiedDocuments.get(), skippedDocuments.get(), getConversionFailures(),
+                failedDocuments));
+        }
+
+        if (migrationParameters.getCheckpointInterval() > 0) {
+            migrationCheckpointStoreProvider.get().removeCheckpoint(migrationDescriptor);
+        }
+
+        // Step 2 : If needed, remove the old XClass
+        removeOldXClass();
+
+        String message = String.format("[%d] documents modified, [%d] unchanged documents skipped%s.",
+            modifiedDocuments.get(), skippedDocuments.get(), getConversionFailures());
+        logger.info(message);
+        return new MigrationStatus(MigrationStatus.Status.SUCCESS, message);
+    }
+
+    @Override
+    public List<List<ClassMigrationDescriptor>> plan(Collection<ClassMigrationDescriptor> migrationDescriptors)
+        throws MigrationException
+    {
+        return classMigrationPlanner.plan(migrationDescriptors);
+    }
+
+    /**
+     * Apply a group of migrations planned by {@link ClassMigrationPlanner} in a single pass : each document holding
+     * XObjects of one of their old XClasses is loaded once, migrated by every migration of the group and saved once.
+     * <p>
+     * Every migration of the group is prepared by its own executor, holding its compiled properties mapping, its
+     * counters and its failed documents, while this executor drives the pass over the documents. A migration only
+     * accounts for the documents holding XObjects of its old XClass, so that its status does not depend on the other
+     * migrations of the group. The planner only groups migrations using the default execution options (no workers,
+     * batches, pipeline, checkpoints or document cache bypass), which a single pass cannot honour.
+     */
+    @Override
+    public Map<String, MigrationStatus> execute(List<ClassMigrationDescriptor> migrationDescriptors)
+        throws MigrationException
+    {
+        if (migrationDescriptors.size() < 2) {
+            return MigrationExecutor.super.execute(migrationDescriptors);
+        }
+
+        xWikiContext = xWikiContextProvider.get();
+        xwiki = xWikiContext.getWiki();
+        // Only counted by documentSaved : the status of each migration is built from the counters of its executor
+        modifiedDocuments = new AtomicLong();
+
+        List<ClassMigrationExecutor> members = new ArrayList<>();
+        List<String> oldClasses = new ArrayList<>();
+        int pageSize = 0;
+        for (ClassMigrationDescriptor descriptor : migrationDescriptors) {
+            ClassMigrationExecutor member = (ClassMigrationExecutor) classMigrationExecutorProvider.get();
+            member.initialize(descriptor);
+            member.failedDocuments = new ConcurrentHashMap<>();
+            member.modifiedDocuments = new AtomicLong();
+            member.skippedDocuments = new AtomicLong();
+            members.add(member);
+            oldClasses.add(member.migrationParameters.getOldClass());
+            pageSize = Math.max(pageSize, member.migrationParameters.getPageSize());
+        }
+
+        logger.info("Migrating the XObjects of the XClasses {} in a single pass.", oldClasses);
+        String lastDocument = StringUtils.EMPTY;
+        List<String> results;
+        boolean completed = true;
+        try {
+            // The documents are saved once for the whole group, so they can only be saved quietly if all the
+            // migrations of the group ask for it
+            if (members.stream().allMatch(member -> member.migrationParameters.isQuietSave())) {
+                beginQuietSaves(migrationDescriptors, members.stream()
+                    .map(member -> member.migrationDescriptor.getMigrationUUID()).collect(Collectors.joining(",")));
+            }
+            if (members.stream().allMatch(member -> member.migrationParameters.isDeferredReindex())) {
+                beginDeferredReindex();
+            }
+            if (members.stream().allMatch(ClassMigrationExecutor::canSaveObjectsOnly)) {
+                objectsOnlySaveClasses = members.stream().map(member -> member.newClassReference).distinct()
+                    .collect(Collectors.toList());
+            }
+
+            do {
+                results = getDocumentPage(oldClasses, lastDocument, pageSize);
+                for (String document : results) {
+                    if (!migrationController.shouldContinue()) {
+                        completed = false;
+                        break;
+                    }
+
+                    migrateFusedDocument(document, members);
+                }
+
+                if (!results.isEmpty()) {
+                    lastDocument = results.get(results.size() - 1);
+                }
+            } while (completed && results.size() == pageSize);
+        } finally {
+            if (quietlySavedDocuments != null) {
+                endQuietSaves(migrationDescriptors);
+            }
+            if (reindexSpool != null) {
+                endDeferredReindex();
+            }
+        }
+
+        Map<String, MigrationStatus> migrationStatuses = new LinkedHashMap<>();
+        for (ClassMigrationExecutor member : members) {
+            String message;
+            MigrationStatus.Status status;
+            long memberModified = member.modifiedDocuments.get();
+            long memberSkipped = member.skippedDocuments.get();
+            Map<String, String> memberFailures = member.failedDocuments;
+            if (!completed) {
+                status = MigrationStatus.Status.CANCELED;
+                message = String.format("Canceled after [%d] documents modified, [%d] unchanged documents skipped "
+                    + "and [%d] documents failed%s, in a single pass with [%d] other migrations.",
+                    memberModified, memberSkipped, memberFailures.size(), member.getConversionFailures(),
+                    members.size() - 1);
+            } else if (memberFailures.isEmpty()) {
+                String removalFailure = member.tryRemoveOldXClass();
+                if (removalFailure == null) {
+                    status = MigrationStatus.Status.SUCCESS;
+                    message = String.format("[%d] documents modified, [%d] unchanged documents skipped%s, "
+                        + "in a single pass with [%d] other migrations.", memberModified, memberSkipped,
+                        member.getConversionFailures(), members.size() - 1);
+                } else {
+                    status = MigrationStatus.Status.FAILURE;
+                    message = String.format("[%d] documents modified, [%d] unchanged documents skipped%s, "
+                        + "in a single pass with [%d] other migrations, but %s.", memberModified, memberSkipped,
+                        member.getConversionFailures(), members.size() - 1, removalFailure);
+                }
+            } else {
+                status = MigrationStatus.Status.FAILURE;
+                message = String.format("Failed to migrate [%d] documents, [%d] documents modified, "
+                    + "[%d] unchanged documents skipped%s, in a single pass with [%d] other migrations: %s",
+                    memberFailures.size(), memberModified, memberSkipped, member.getConversionFailures(),
+                    members.size() - 1, memberFailures);
+            }
+            logger.info(message);
+            migrationStatuses.put(member.migrationDescriptor.getMigrationUUID(), new MigrationStatus(status, message));
+        }
+
+        return migrationStatuses;
+    }
+
+    /**
+     * Migrate a document with every migration of a group holding XObjects in it, and save it once. The document is
+     * only counted, as modified, skipped or failed, by these migrations.
+     */
+    private void migrateFusedDocument(String document, List<ClassMigrationExecutor> members)
+    {
+        XWikiDocument xwikiDocument;
+        try {
+            // The members of a group share the same loading options, see ClassMigrationPlanner
+            // Documents saved object by object need their previous version for the update event
+            xwikiDocument = members.get(0).loadDocument(document, objectsOnlySaveClasses != null, xWikiContext);
+        } catch (Exception e) {
+            // Without the document, the migrations that it concerns cannot be known
+            recordFusedFailure(document, members, e);
+            return;
+        }
+        if (xwikiDocument == null) {
+            return;
+        }
+
+        List<ClassMigrationExecutor> changedMembers = new ArrayList<>();
+        List<ClassMigrationExecutor> unchangedMembers = new ArrayList<>();
+        for (ClassMigrationExecutor member : members) {
+            if (xwikiDocument.getXObjects(member.oldClassReference).isEmpty()) {
+                continue;
+            }
+
+            try {
+                if (member.migrateXObjects(xwikiDocument, xWikiContext)) {
+                    changedMembers.add(member);
+                } else {
+                    unchangedMembers.add(member);
+                }
+            } catch (Exception e) {
+                // The document is not saved, so none of the migrations concerned by it has been applied to it
+                changedMembers.add(member);
+                changedMembers.addAll(unchangedMembers);
+                recordFusedFailure(document, changedMembers, e);
+                return;
+            }
+        }
+
+        if (!changedMembers.isEmpty()) {
+            boolean createNewVersion = false;
+            List<String> migrationNames = new ArrayList<>();
+            for (ClassMigrationExecutor member : changedMembers) {
+                createNewVersion |= member.migrationParameters.isCreateNewVersion();
+                migrationNames.add(String.format("\"%s\" (%s)", member.migrationDescriptor.getMigrationName(),
+                    member.migrationDescriptor.getMigrationUUID()));
+            }
+
+            try {
+                saveDocmuent(xwikiDocument, String.format("Migrate objects as part of the migrations %s",
+                    StringUtils.join(migrationNames, ", ")), createNewVersion, xWikiContext);
+            } catch (Exception e) {
+                recordFusedFailure(document, changedMembers, e);
+                return;
+            }
+            changedMembers.forEach(member -> member.modifiedDocuments.incrementAndGet());
+        } else {
+            logger.debug("Document [{}] is unchanged, skipping its save.", xwikiDocument.getDocumentReference());
+        }
+        unchangedMembers.forEach(member -> member.skippedDocuments.incrementAndGet());
+    }
+
+    private void recordFusedFailure(String document, List<ClassMigrationExecutor> members, Exception e)
+    {
+        logger.error("Failed to migrate the document [{}].", document, e);
+        String cause = ExceptionUtils.getRootCauseMessage(e);
+        members.forEach(member -> member.failedDocuments.put(document, cause));
+    }
+
+    /**
+     * Start saving documents in quiet mode : the saves are marked as part of a bulk migration, both in the execution
+     * context (which is inherited by the threads of the migration) and through a {@link BulkMigrationStartedEvent}
+     * that the listeners of the document events can check.
+     *
+     * @param source the migration descriptor, or the descriptors of the migrations applied together
+     * @param migrationUUID the UUID of the migration, or the UUIDs of the migrations applied together
+     */
+    private void beginQuietSaves(Object source, String migrationUUID)
+    {
+        quietlySavedDocuments = new AtomicLong();
+        execution.getContext().setProperty(BulkMigrationStartedEvent.EXECUTION_CONTEXT_PROPERTY, migrationUUID);
+        observationManager.notify(new BulkMigrationStartedEvent(), source);
+    }
+
+    /**
+     * Stop saving documents in quiet mode and send a single {@link BulkMigrationFinishedEvent} with the number of saved
+     * documents.
+     */
+    private void endQuietSaves(Object source)
+    {
+        execution.getContext().removeProperty(BulkMigrationStartedEvent.EXECUTION_CONTEXT_PROPERTY);
+        Long savedDocuments = quietlySavedDocuments.get();
+        quietlySavedDocuments = null;
+
+        logger.info("[{}] documents saved in quiet mode.", savedDocuments);
+        observationManager.notify(new BulkMigrationFinishedEvent(), source, savedDocuments);
+    }
+
+    /**
+     * Start deferring the reindex of the saved documents : the documents are still saved as usual, with all their
+     * events, but the {@link MigrationIndexer#EXECUTION_CONTEXT_PROPERTY} property of the execution context (which is
+     * inherited by the threads of the migration) tells the indexing listener to skip them, and their references are
+     * collected on disk.
+     */
+    private void beginDeferredReindex() throws MigrationException
+    {
+        if (!migrationReindexer.isAvailable()) {
+            logger.warn("The reindex of the documents cannot be deferred as no migration indexer is installed, the "
+                + "documents will be indexed as they are saved.");
+            return;
+        }
+
+        try {
+            reindexSpool = migrationReindexer.createSpool();
+        } catch (IOException e) {
+            throw new MigrationException("Failed to create the list of the documents to reindex", e);
+        }
+        execution.getContext().setProperty(MigrationIndexer.EXECUTION_CONTEXT_PROPERTY, Boolean.TRUE);
+    }
+
+    /**
+     * Stop deferring the reindex of the saved documents and reindex all of them in a background job.
+     */
+    private void endDeferredReindex()
+    {
+        execution.getContext().removeProperty(MigrationIndexer.EXECUTION_CONTEXT_PROPERTY);
+        ReindexSpool savedDocuments = reindexSpool;
+        reindexSpool = null;
+
+        migrationReindexer.submit(savedDocuments);
+    }
+
+    /**
+     * @return true if only the migrated XObjects should be written when saving the documents : this requires the
+     * documents to be saved without a new version, and their title and content to be left untouched
+     */
+    private boolean canSaveObjectsOnly()
+    {
+        if (!migrationParameters.isObjectsOnlySave()) {
+            return false;
+        }
+
+        if (migrationParameters.isCreateNewVersion() || propertyMappingPlan.hasDocumentOperations()) {
+            logger.warn("The migration [{}] creates new versions or changes the document title or content, "
+                + "its documents will be saved as a whole.", migrationDescriptor.getMigrationUUID());
+            return false;
+        }
+
+        return true;
+    }
+
+    private void removeOldXClass() throws MigrationException
+    {
+        if (!migrationParameters.isInPlace() && migrationParameters.isRemoveOldXClass()
+            && xwiki.exists(oldClassReference, xWikiContext)) {
+            try {
+                xwiki.deleteDocument(xwiki.getDocument(oldClassReference, xWikiContext), false, xWikiContext);
+            } catch (XWikiException e) {
+                throw new MigrationException(
+                        String.format("Failed to remove the old XClass [%s]", migrationParameters.getOldClass()), e);
+            }
+        }
+    }
+
+    /**
+     * Remove the old XClass of a migration applied in a single pass with other migrations, without preventing the
+     * status of the other migrations from being reported.
+     *
+     * @return null if the old XClass has been removed or did not need to be, or else the cause of the failure
+     */
+    private String tryRemoveOldXClass()
+    {
+        try {
+            removeOldXClass();
+            return null;
+        } catch (MigrationException e) {
+            logger.error("Failed to remove the old XClass of the migration [{}].",
+                migrationDescriptor.getMigrationUUID(), e);
+            return StringUtils.uncapitalize(e.getMessage());
+        }
+    }
+
+    private MigrationStatus getCanceledStatus()
+    {
+        String message = String.format("Canceled after [%d] documents modified, [%d] unchanged documents skipped "
+            + "and [%d] documents failed%s.", modifiedDocuments.get(), skippedDocuments.get(), failedDocuments.size(),
+            getConversionFailures());
+        logger.info(message);
+        return new MigrationStatus(MigrationStatus.Status.CANCELED, message);
+    }
+
+    /**
+     * @return a description of the values that could not be converted by each mapping entry, or an empty string if
+     * all the values have been converted
+     */
+    private String getConversionFailures()
+    {
+        Map<String, Long> conversionFailures = propertyMappingPlan.getConversionFailures();
+        if (conversionFailures.isEmpty()) {
+            return StringUtils.EMPTY;
+        }
+
+        logger.warn("Some values could not be converted and have not been migrated: {}", conversionFailures);
+        return String.format(", values not converted %s", conversionFailures);
+    }
+
+    /**
+     * Try to apply the migration as a direct rename of the properties in the store.
+     *
+     * @return the status of the migration, or null if it cannot be done in the store
+     */
+    private MigrationStatus renameInStore() throws MigrationException
+    {
+        Map<String, String> renames = classPropertiesMapping.entrySet().stream()
+            .filter(entry -> !entry.getKey().equals(entry.getValue()))
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        if (!migrationParameters.isInPlace() || renames.isEmpty()
+            || !storePropertyRenamer.canRename(migrationParameters.getOldClass(), renames, newXClass)) {
+            logger.info("The migration is not a plain rename of properties, migrating the documents one by one.");
+            return null;
+        }
+
+        logger.info("Renaming properties {} of XClass [{}] directly in the store.", renames, oldClassReference);
+        long renamedObjects = storePropertyRenamer.rename(migrationParameters.getOldClass(), renames, newXClass,
+            migrationParameters.getPageSize());
+
+        return new MigrationStatus(MigrationStatus.Status.SUCCESS,
+            String.format("[%d] XObjects renamed directly in the store.", renamedObjects));
+    }
+
+    @Override
+    public MigrationEstimate estimate(ClassMigrationDescriptor migrationDescriptor) throws MigrationException
+    {
+        initialize(migrationDescriptor);
+
+        // Count the documents and XObjects to migrate with a single aggregate query
+        long documentCount;
+        long objectCount;
+        try {
+            Query query = queryManager.createQuery("select count(distinct obj.name), count(obj.id) "
+                + "from BaseObject obj where obj.className = :oldClassName", Query.HQL);
+            query.bindValue("oldClassName", migrationParameters.getOldClass());
+            Object[] counts = (Object[]) query.execute().get(0);
+            documentCount = ((Number) counts[0]).longValue();
+            objectCount = ((Number) counts[1]).longValue();
+        } catch (QueryException e) {
+            throw new MigrationException("Failed to count the documents to migrate.", e);
+        }
+
+        // Time the migration of the first documents, working on copies that are never saved
+        List<String> sample = getDocumentPage(StringUtils.EMPTY, ESTIMATE_SAMPLE_SIZE);
+        long startTime = System.currentTimeMillis();
+        for (String document : sample) {
+            try {
+                XWikiDocument xwikiDocument = loadDocument(document, true, xWikiContext);
+                if (xwikiDocument != null) {
+                    migrateXObjects(xwikiDocument, xWikiContext);
+                }
+            } catch (XWikiException e) {
+                throw new MigrationException(String.format("Failed to retrieve document [%s].", document), e);
+            }
+        }
+
+        return new MigrationEstimate(documentCount, objectCount, sample.size(),
+            System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Initialize the essential attributes of our executor.
+     */
+    private void initialize(ClassMigrationDescriptor migrationDescriptor) throws MigrationException
+    {
         this.migrationDescriptor = migrationDescriptor;
         migrationParameters = (ClassMigrationParameters) migrationDescriptor.getMigrationParameters();
         classPropertiesMapping = new HashMap<>();
@@ -131,36 +738,22 @@ public class ClassMigrationExecutor implements MigrationExecutor<ClassMigrationD
 
         // Step 0 : Construct the complete mapping that we'll use to migrate one object to another
         constructPropertiesMapping();
-
-        // Step 1 : Migrate the XObjects (if needed, delete the old XObjects)
-        migrateAllXObjects();
-
-        // Step 2 : If needed, remove the old XClass
-        if (!migrationParameters.isInPlace() && migrationParameters.isRemoveOldXClass()
-            && xwiki.exists(oldClassReference, xWikiContext)) {
-            try {
-                xwiki.deleteDocument(xwiki.getDocument(oldClassReference, xWikiContext), false, xWikiContext);
-            } catch (XWikiException e) {
-                throw new MigrationException(
-                        String.format("Failed to remove the old XClass [%s]", migrationParameters.getOldClass()));
-            }
-        }
-
-        return MigrationStatus.SUCCESS;
     }
 
     private void constructPropertiesMapping() throws MigrationException
     {
         logger.info("Building properties mapping ...");
+        BaseClass oldClass;
+        BaseClass newClass;
         try {
             // Here again, three steps
             // Step 1 : Get the current structures of the two XClasses
-            BaseClass oldClass = xwiki.getDocument(oldClassReference, xWikiContext).getXClass();
+            oldClass = xwiki.getDocument(oldClassReference, xWikiContext).getXClass();
             Set<String> oldProperties = oldClass.getPropertyList().stream()
                 .filter(property ->
                     !(oldClass.getField(property) instanceof ComputedFieldClass
                         || oldClass.getField(property) instanceof ComputedFieldMetaClass)).collect(Collectors.toSet());
-            BaseClass newClass = xwiki.getDocument(newClassReference, xWikiContext).getXClass();
+            newClass = xwiki.getDocument(newClassReference, xWikiContext).getXClass();
             Set<String> newProperties = newClass.getPropertyList().stream()
                 .filter(property ->
                     !(newClass.getField(property) instanceof ComputedFieldClass
@@ -184,55 +777,566 @@ public class ClassMigrationExecutor implements MigrationExecutor<ClassMigrationD
                 logger.debug("[{}] => [{}]", key, classPropertiesMapping.get(key));
             }
         }
+
+        newXClass = newClass;
+
+        // Step 3 : Compile the mapping once so that migrating an XObject only has to run the resulting operations
+        propertyMappingPlan = PropertyMappingPlan.compile(classPropertiesMapping, oldClass, newClass,
+            migrationParameters.isInPlace(), logger);
+        if (migrationParameters.isInPlace() && !propertyMappingPlan.hasDocumentOperations()) {
+            changeDetectionPlan = PropertyMappingPlan.compile(classPropertiesMapping, oldClass, newClass, true, logger);
+        }
     }
 
-    private void migrateAllXObjects() throws MigrationException
+    /**
+     * Migrate all the documents page by page, sequentially or with the worker pool.
+     * <p>
+     * This is the only path saving checkpoints : a checkpoint holds the last document of the query page up to which
+     * every document has been processed, and the number of documents of the query pages processed so far, including
+     * the ones skipped because they would not be changed. Both sequential and parallel migrations save a checkpoint
+     * once a page is completed ; a sequential migration also saves one when it is canceled between two batches.
+     *
+     * @return true if all the documents have been processed, false if the migration has been canceled
+     */
+    private boolean migrateAllXObjects() throws MigrationException
     {
         logger.info("Migrating XObjects from XClass [{}] to new XClass [{}].", oldClassReference, newClassReference);
+
+        // Go through the documents to migrate page by page, each page starting after the last document of the
+        // previous one, so that we never hold the complete list of documents in memory
+        String lastDocument = StringUtils.EMPTY;
+        long processedCount = 0;
+        long lastCheckpointCount = 0;
+
+        // If a previous execution of the migration has been interrupted, resume after its last checkpoint
+        MigrationCheckpointStore checkpointStore = null;
+        if (migrationParameters.getCheckpointInterval() > 0) {
+            checkpointStore = migrationCheckpointStoreProvider.get();
+            MigrationCheckpoint checkpoint = checkpointStore.getCheckpoint(migrationDescriptor);
+            if (checkpoint != null) {
+                logger.info("Resuming the migration after document [{}], [{}] documents already migrated.",
+                    checkpoint.getLastKey(), checkpoint.getProcessedCount());
+                lastDocument = checkpoint.getLastKey();
+                processedCount = checkpoint.getProcessedCount();
+                lastCheckpointCount = processedCount;
+            }
+        }
+
+        List<String> results;
+        do {
+            results = getDocumentPage(lastDocument, migrationParameters.getPageSize());
+            List<String> documents = getChangedDocuments(results, xWikiContext);
+
+            if (workerPool != null) {
+                migrateDocumentsConcurrently(documents);
+                if (migrationController.isCanceled()) {
+                    // The workers complete the documents of a page in any order, so there is no safe watermark
+                    return false;
+                }
+            } else {
+                for (int i = 0; i < documents.size(); i += migrationParameters.getBatchSize()) {
+                    if (!migrationController.shouldContinue()) {
+                        // The documents are migrated in order, so the one before the current batch is a safe
+                        // watermark to resume from
+                        if (checkpointStore != null && failedDocuments.isEmpty() && i > 0) {
+                            // Count the documents of the query page, as for the checkpoints of completed pages
+                            String watermark = documents.get(i - 1);
+                            checkpointStore.saveCheckpoint(migrationDescriptor,
+                                new MigrationCheckpoint(watermark, processedCount + results.indexOf(watermark) + 1));
+                        }
+                        return false;
+                    }
+
+                    migrateBatch(
+                        documents.subList(i, Math.min(i + migrationParameters.getBatchSize(), documents.size())),
+                        xWikiContext);
+                }
+            }
+
+            if (!results.isEmpty()) {
+                lastDocument = results.get(results.size() - 1);
+                processedCount += results.size();
+            }
+
+            // Pages are completed one after the other, so the last document of a page is a safe watermark ; it is
+            // not moved anymore once a document failed so that the failed documents get migrated again on resume
+            if (checkpointStore != null && failedDocuments.isEmpty()
+                && processedCount - lastCheckpointCount >= migrationParameters.getCheckpointInterval()) {
+                checkpointStore.saveCheckpoint(migrationDescriptor,
+                    new MigrationCheckpoint(lastDocument, processedCount));
+                lastCheckpointCount = processedCount;
+            }
+        } while (results.size() == migrationParameters.getPageSize());
+
+        return true;
+    }
+
+    /**
+     * Migrate all the documents through a pipeline of three stages linked by queues of
+     * {@link ClassMigrationParameters#getPipelineQueueSize()} documents : a loading thread fetches the next documents
+     * while a migration thread applies the properties mapping and the current thread saves the migrated documents. A
+     * stage waits when the queue that it feeds is full, which bounds the number of documents held in memory.
+     * <p>
+     * Batches and checkpoints are not used by the pipeline, which is thus never used by the migrations saving
+     * checkpoints. Failures are recorded in {@link #failedDocuments} instead of stopping the migration.
+     *
+     * @return true if all the documents have been processed, false if the migration has been canceled
+     */
+    private boolean migrateAllXObjectsPipelined() throws MigrationException
+    {
+        logger.info("Migrating XObjects from XClass [{}] to new XClass [{}] in a pipeline.", oldClassReference,
+            newClassReference);
+
+        // An empty element marks the end of the documents
+        BlockingQueue<Optional<XWikiDocument>> loadedDocuments =
+            new ArrayBlockingQueue<>(migrationParameters.getPipelineQueueSize());
+        BlockingQueue<Optional<XWikiDocument>> migratedDocuments =
+            new ArrayBlockingQueue<>(migrationParameters.getPipelineQueueSize());
+        AtomicBoolean canceled = new AtomicBoolean();
+
+        ExecutorService stages = Executors.newFixedThreadPool(2,
+            new BasicThreadFactory.Builder().namingPattern("Class migration pipeline %d").daemon(true).build());
         try {
-            // Get a list of XObjects implementing the old XClass
-            Query query = queryManager.createQuery("select distinct doc.fullName "
-                    + "from XWikiDocument doc, BaseObject obj "
-                    + "where doc.fullName = obj.name and obj.className = :oldClassName", Query.HQL);
+            Future<?> loader = submitStage(stages, context -> loadDocuments(loadedDocuments, canceled, context));
+            Future<?> migrator =
+                submitStage(stages, context -> migrateDocuments(loadedDocuments, migratedDocuments, context));
+
+            saveDocuments(migratedDocuments);
+
+            // If the migration stage failed, the loading stage may be waiting for it : it is stopped below
+            migrator.get();
+            loader.get();
+        } catch (ExecutionException e) {
+            throw new MigrationException("A stage of the class migration pipeline failed unexpectedly.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationException("Interrupted while waiting for the class migration pipeline.", e);
+        } finally {
+            stages.shutdownNow();
+        }
 
-            List<String> results = query.bindValue("oldClassName", migrationParameters.getOldClass()).execute();
+        return !canceled.get();
+    }
 
-            for (String result : results) {
+    /**
+     * Run the given pipeline stage in its own execution context and {@link XWikiContext}.
+     */
+    private Future<?> submitStage(ExecutorService stages, PipelineStage stage) throws MigrationException
+    {
+        ExecutionContext stageExecutionContext = cloneExecutionContext();
+        XWikiContext stageContext = xWikiContext.clone();
+
+        return stages.submit(() -> {
+            stageContext.declareInExecutionContext(stageExecutionContext);
+            execution.setContext(stageExecutionContext);
+            try {
+                stage.run(stageContext);
+            } finally {
+                execution.removeContext();
+            }
+            return null;
+        });
+    }
+
+    private void loadDocuments(BlockingQueue<Optional<XWikiDocument>> loadedDocuments, AtomicBoolean canceled,
+        XWikiContext context) throws MigrationException, InterruptedException
+    {
+        try {
+            String lastDocument = StringUtils.EMPTY;
+            List<String> results;
+            do {
+                results = getDocumentPage(lastDocument, migrationParameters.getPageSize());
+                for (String document : getChangedDocuments(results, context)) {
+                    if (!migrationController.shouldContinue()) {
+                        canceled.set(true);
+                        return;
+                    }
+
+                    try {
+                        // The document is handed over to other threads, so it should not be shared with the cache
+                        XWikiDocument xwikiDocument = loadDocument(document, true, context);
+                        if (xwikiDocument != null) {
+                            loadedDocuments.put(Optional.of(xwikiDocument));
+                        }
+                    } catch (Exception e) {
+                        logger.error("Failed to load the document [{}].", document, e);
+                        failedDocuments.put(document, ExceptionUtils.getRootCauseMessage(e));
+                    }
+                }
+
+                if (!results.isEmpty()) {
+                    lastDocument = results.get(results.size() - 1);
+                }
+            } while (results.size() == migrationParameters.getPageSize());
+        } finally {
+            loadedDocuments.put(Optional.empty());
+        }
+    }
+
+    private void migrateDocuments(BlockingQueue<Optional<XWikiDocument>> loadedDocuments,
+        BlockingQueue<Optional<XWikiDocument>> migratedDocuments, XWikiContext context) throws InterruptedException
+    {
+        try {
+            Optional<XWikiDocument> document;
+            while ((document = loadedDocuments.take()).isPresent()) {
+                XWikiDocument xwikiDocument = document.get();
                 try {
-                    // TODO: Log something if the document is null
-                    migrateDocumentXObjects(xwiki.getDocument(documentReferenceResolver.resolve(result), xWikiContext));
-                } catch (XWikiException e) {
-                    throw new MigrationException(String.format("Failed to retrieve document [%s].", result), e);
+                    if (migrateXObjects(xwikiDocument, context)) {
+                        migratedDocuments.put(document);
+                    } else {
+                        logger.debug("Document [{}] is unchanged, skipping its save.",
+                            xwikiDocument.getDocumentReference());
+                        skippedDocuments.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    logger.error("Failed to migrate the document [{}].", xwikiDocument.getDocumentReference(), e);
+                    failedDocuments.put(xwikiDocument.getFullName(), ExceptionUtils.getRootCauseMessage(e));
                 }
             }
+        } finally {
+            migratedDocuments.put(Optional.empty());
+        }
+    }
+
+    private void saveDocuments(BlockingQueue<Optional<XWikiDocument>> migratedDocuments) throws InterruptedException
+    {
+        Optional<XWikiDocument> document;
+        while ((document = migratedDocuments.take()).isPresent()) {
+            XWikiDocument xwikiDocument = document.get();
+            try {
+                saveDocmuent(xwikiDocument, xWikiContext);
+            } catch (Exception e) {
+                logger.error("Failed to save the document [{}].", xwikiDocument.getDocumentReference(), e);
+                failedDocuments.put(xwikiDocument.getFullName(), ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+    }
+
+    /**
+     * For in place migrations, remove from the given page the documents that the migration would leave unchanged.
+     * The XObjects of the whole page are loaded in bulk and migrated without being saved, which is much cheaper than
+     * loading each document, so that documents that are already migrated (for example when running again a migration
+     * that has been interrupted) are skipped without being loaded.
+     *
+     * @param documents a page of documents to migrate
+     * @param context the context to use
+     * @return the documents of the page that the migration would change, in the same order
+     */
+    private List<String> getChangedDocuments(List<String> documents, XWikiContext context) throws MigrationException
+    {
+        if (changeDetectionPlan == null || documents.isEmpty()) {
+            return documents;
+        }
+
+        Map<String, List<BaseObject>> objects;
+        try {
+            objects = migrationDocumentLoader.loadXObjects(documents, migrationParameters.getOldClass());
+        } catch (QueryException e) {
+            throw new MigrationException("Failed to load the XObjects of the documents to migrate.", e);
+        }
+
+        List<String> changedDocuments = new ArrayList<>(documents.size());
+        for (String document : documents) {
+            // The copy operations only need the reference of the document, to report the values not converted
+            XWikiDocument documentStub = new XWikiDocument(documentReferenceResolver.resolve(document));
+            boolean changed = false;
+            for (BaseObject object : objects.getOrDefault(document, Collections.emptyList())) {
+                changed |= changeDetectionPlan.apply(documentStub, object, object, context);
+            }
+
+            if (changed) {
+                changedDocuments.add(document);
+            } else {
+                logger.debug("Document [{}] is unchanged, skipping it.", document);
+                skippedDocuments.incrementAndGet();
+            }
+        }
+
+        return changedDocuments;
+    }
+
+    /**
+     * @param lastDocument the last document of the previous page, or an empty string for the first page
+     * @param pageSize the maximum number of documents to return
+     * @return the next page of documents holding XObjects of the old XClass, ordered by name
+     */
+    private List<String> getDocumentPage(String lastDocument, int pageSize) throws MigrationException
+    {
+        return getDocumentPage(Collections.singletonList(migrationParameters.getOldClass()), lastDocument, pageSize);
+    }
+
+    /**
+     * @param oldClasses the XClasses of the XObjects to migrate
+     * @param lastDocument the last document of the previous page, or an empty string for the first page
+     * @param pageSize the maximum number of documents to return
+     * @return the next page of documents holding XObjects of one of the given XClasses, ordered by name
+     */
+    private List<String> getDocumentPage(List<String> oldClasses, String lastDocument, int pageSize)
+        throws MigrationException
+    {
+        try {
+            Query query = queryManager.createQuery("select distinct doc.fullName "
+                    + "from XWikiDocument doc, BaseObject obj "
+                    + "where doc.fullName = obj.name and obj.className in (:oldClassNames) "
+                    + "and doc.fullName > :lastDocument order by doc.fullName", Query.HQL);
+            query.bindValue("oldClassNames", oldClasses);
+            query.bindValue("lastDocument", lastDocument);
+            query.setLimit(pageSize);
+
+            return query.execute();
         } catch (QueryException e) {
             throw new MigrationException("Failed to get a list of documents to migrate.", e);
         }
     }
 
-    private void migrateDocumentXObjects(XWikiDocument document) throws MigrationException
+    /**
+     * Migrate the given documents on {@link ClassMigrationParameters#getParallelism()} workers, each one having its
+     * own execution context and {@link XWikiContext}. Failures are handled as for sequential migrations, see
+     * {@link #migrateBatch(List, XWikiContext)}.
+     */
+    private void migrateDocumentsConcurrently(List<String> documents) throws MigrationException
     {
-        if (document != null) {
-            logger.debug("Migrating XObjects of document [{}] ...", document.getDocumentReference());
-            List<BaseObject> objects = document.getXObjects(oldClassReference);
-
-            for (BaseObject object : objects) {
-                if (object != null && migrationParameters.isInPlace()) {
-                    logger.debug("Migrating XObject [{}] in place ...", object);
-                    migrateProperties(document, object, object);
-                } else if (object != null) {
-                    logger.debug("Migrating XObject [{}], creating XObject with the new XClass ...", object);
-                    document.addXObject(migrateXObject(document, object));
+        Queue<String> documentQueue = new ConcurrentLinkedQueue<>(documents);
+        List<Future<?>> workers = new ArrayList<>();
+
+        for (int i = 0; i < migrationParameters.getParallelism(); i++) {
+            ExecutionContext workerExecutionContext = cloneExecutionContext();
+            XWikiContext workerContext = xWikiContext.clone();
+            workers.add(workerPool.submit(() -> runWorker(documentQueue, workerExecutionContext, workerContext)));
+        }
+
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new MigrationException("A class migration worker failed unexpectedly.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationException("Interrupted while waiting for the class migration workers.", e);
+        }
+    }
+
+    private void runWorker(Queue<String> documentQueue, ExecutionContext executionContext, XWikiContext context)
+    {
+        context.declareInExecutionContext(executionContext);
+        execution.setContext(executionContext);
+
+        try {
+            List<String> batch;
+            while (migrationController.shouldContinue() && !(batch = pollBatch(documentQueue)).isEmpty()) {
+                migrateBatch(batch, context);
+            }
+        } finally {
+            execution.removeContext();
+        }
+    }
+
+    /**
+     * Migrate the given documents, in a single transaction if batching is enabled, or else (or if the batch is rolled
+     * back) one by one. Whether the documents are migrated sequentially or by workers, a document that cannot be
+     * migrated is recorded in {@link #failedDocuments} and the migration goes on with the next documents.
+     *
+     * @param batch the documents to migrate
+     * @param context the context to use
+     */
+    private void migrateBatch(List<String> batch, XWikiContext context)
+    {
+        if (!migrateDocumentBatch(batch, context)) {
+            for (String document : batch) {
+                try {
+                    migrateDocument(document, context);
+                } catch (Exception e) {
+                    logger.error("Failed to migrate the document [{}].", document, e);
+                    failedDocuments.put(document, ExceptionUtils.getRootCauseMessage(e));
+                }
+            }
+        }
+    }
+
+    private List<String> pollBatch(Queue<String> documentQueue)
+    {
+        List<String> batch = new ArrayList<>();
+        String document;
+        while (batch.size() < migrationParameters.getBatchSize() && (document = documentQueue.poll()) != null) {
+            batch.add(document);
+        }
+        return batch;
+    }
+
+    /**
+     * Migrate the given documents and save them all in a single store transaction.
+     * <p>
+     * The documents are written to the store without any event while the transaction is open. Everything else that
+     * a save implies (counters, throttle samples, quiet mode and reindex lists, cache eviction and document events) is
+     * only done once the transaction is committed, so that a rolled back batch leaves no trace before its documents
+     * are migrated again one by one.
+     *
+     * @param documents the documents to migrate
+     * @param context the context to use ; the transaction is bound to it
+     * @return true if the documents have been migrated and committed, false if the batch has been rolled back (or
+     * holds a single document) and the documents should be migrated one by one
+     */
+    private boolean migrateDocumentBatch(List<String> documents, XWikiContext context)
+    {
+        if (documents.size() < 2) {
+            return false;
+        }
+
+        // Wait for the whole batch before opening the transaction, so that the throttle never holds a database
+        // connection ; a canceled migration stops at its next check, after this batch
+        migrationThrottle.acquire(documents.size());
+
+        XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) hibernateStore;
+        List<XWikiDocument> writtenDocuments = new ArrayList<>(documents.size());
+        long unchangedDocuments = 0;
+        long startTime = System.currentTimeMillis();
+        boolean committed = false;
+        try {
+            // Every document written while the transaction is open reuses its session instead of opening its own
+            store.beginTransaction(context);
+            for (String document : documents) {
+                // Work on copies, so that a rolled back batch does not leave migrated but unsaved documents behind in
+                // the document cache
+                XWikiDocument xwikiDocument = loadDocument(document, true, context);
+                if (xwikiDocument == null) {
+                    continue;
+                }
+
+                if (migrateXObjects(xwikiDocument, context)) {
+                    writeDocument(xwikiDocument, getSaveComment(), migrationParameters.isCreateNewVersion(),
+                        context);
+                    writtenDocuments.add(xwikiDocument);
+                } else {
+                    logger.debug("Document [{}] is unchanged, skipping its save.",
+                        xwikiDocument.getDocumentReference());
+                    unchangedDocuments++;
                 }
             }
+            store.endTransaction(context, true);
+            committed = true;
+        } catch (Exception e) {
+            logger.warn("Failed to save a batch of [{}] documents starting with [{}], saving them one by one: [{}]",
+                documents.size(), documents.get(0), ExceptionUtils.getRootCauseMessage(e));
+        } finally {
+            if (!committed) {
+                store.endTransaction(context, false);
+            }
+        }
 
-            // If asked, we remove the old XObjects
-            if (!migrationParameters.isInPlace() && migrationParameters.isRemoveOldXObjects()) {
-                removeOldXObjects(document, objects);
+        if (committed) {
+            if (!writtenDocuments.isEmpty()) {
+                // The commit is part of the cost of the saves
+                migrationThrottle.recordSave((System.currentTimeMillis() - startTime) / writtenDocuments.size());
             }
+            skippedDocuments.addAndGet(unchangedDocuments);
+            for (XWikiDocument xwikiDocument : writtenDocuments) {
+                storeDocumentNotifier.notifyUpdated(xwikiDocument, context);
+                documentSaved(xwikiDocument);
+            }
+        }
+
+        return committed;
+    }
+
+    private ExecutionContext cloneExecutionContext() throws MigrationException
+    {
+        try {
+            return executionContextManager.clone(execution.getContext());
+        } catch (ExecutionContextException e) {
+            throw new MigrationException("Failed to clone the execution context of the migration.", e);
+        }
+    }
+
+    private void migrateDocument(String document, XWikiContext context) throws MigrationException
+    {
+        try {
+            // Documents saved object by object need their previous version for the update event
+            migrateDocumentXObjects(loadDocument(document, objectsOnlySaveClasses != null, context), context);
+        } catch (XWikiException e) {
+            throw new MigrationException(String.format("Failed to retrieve document [%s].", document), e);
+        }
+    }
+
+    /**
+     * @param document the document to load
+     * @param copy whether the caller needs its own instance of the document, that it can modify without affecting the
+     * document cache
+     * @param context the context to use
+     * @return the loaded document, or null if the document does not exist anymore (the callers then skip it)
+     */
+    private XWikiDocument loadDocument(String document, boolean copy, XWikiContext context) throws XWikiException
+    {
+        DocumentReference documentReference = documentReferenceResolver.resolve(document);
+
+        XWikiDocument xwikiDocument;
+        if (migrationParameters.isBypassDocumentCache()) {
+            xwikiDocument = migrationDocumentLoader.load(documentReference, context);
+        } else {
+            xwikiDocument = xwiki.getDocument(documentReference, context);
+        }
+
+        // The document may have been deleted since the query listing the documents to migrate
+        if (xwikiDocument == null || xwikiDocument.isNew()) {
+            logger.warn("The document [{}] does not exist anymore, skipping it.", document);
+            return null;
+        }
+
+        if (migrationParameters.isBypassDocumentCache()) {
+            // The loaded instance is never shared, so it never needs to be copied
+            return xwikiDocument;
+        }
 
-            saveDocmuent(document);
+        if (copy) {
+            // The cached instance is left untouched, so it is the version of the document before the migration
+            XWikiDocument copiedDocument = xwikiDocument.clone();
+            copiedDocument.setOriginalDocument(xwikiDocument);
+            return copiedDocument;
         }
+        return xwikiDocument;
+    }
+
+    private void migrateDocumentXObjects(XWikiDocument document, XWikiContext context) throws MigrationException
+    {
+        if (document != null) {
+            if (migrateXObjects(document, context)) {
+                saveDocmuent(document, context);
+            } else {
+                // Saving would only cost a database write, a cache invalidation and events for nothing
+                logger.debug("Document [{}] is unchanged, skipping its save.", document.getDocumentReference());
+                skippedDocuments.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Migrate the XObjects of the given document, without saving it.
+     *
+     * @return true if the document has been changed by the migration
+     */
+    private boolean migrateXObjects(XWikiDocument document, XWikiContext context) throws MigrationException
+    {
+        logger.debug("Migrating XObjects of document [{}] ...", document.getDocumentReference());
+        List<BaseObject> objects = document.getXObjects(oldClassReference);
+        boolean changed = false;
+
+        for (BaseObject object : objects) {
+            if (object != null && migrationParameters.isInPlace()) {
+                logger.debug("Migrating XObject [{}] in place ...", object);
+                changed |= migrateProperties(document, object, object, context);
+            } else if (object != null) {
+                logger.debug("Migrating XObject [{}], creating XObject with the new XClass ...", object);
+                document.addXObject(migrateXObject(document, object, context));
+                changed = true;
+            }
+        }
+
+        // If asked, we remove the old XObjects
+        if (!migrationParameters.isInPlace() && migrationParameters.isRemoveOldXObjects()) {
+            removeOldXObjects(document, objects);
+        }
+
+        return changed;
     }
 
     private void removeOldXObjects(XWikiDocument document, List<BaseObject> objects)
@@ -245,74 +1349,123 @@ public class ClassMigrationExecutor implements MigrationExecutor<ClassMigrationD
         }
     }
 
-    private BaseObject migrateXObject(XWikiDocument document, BaseObject oldObject) throws MigrationException
+    private BaseObject migrateXObject(XWikiDocument document, BaseObject oldObject, XWikiContext context)
+        throws MigrationException
     {
         BaseObject newObject = new BaseObject();
         newObject.setXClassReference(newClassReference);
 
-        migrateProperties(document, oldObject, newObject);
+        migrateProperties(document, oldObject, newObject, context);
 
         return newObject;
     }
 
-    private void migrateProperties(XWikiDocument document, BaseObject oldObject, BaseObject newObject)
-        throws MigrationException
+    private boolean migrateProperties(XWikiDocument document, BaseObject oldObject, BaseObject newObject,
+        XWikiContext context)
     {
-        for (Map.Entry<String, String> mappingEntry : classPropertiesMapping.entrySet()) {
-            if (!migrationParameters.isInPlace() || !mappingEntry.getKey().equals(mappingEntry.getValue())) {
-
-                // Handle the case where we migrate the document content or the document title from the original object
-                // to the new one
-                Object oldValue;
-                if (mappingEntry.getKey().equals(ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY)) {
-                    oldValue = document.getContent();
-                } else if (mappingEntry.getKey().equals(ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY)) {
-                    oldValue = document.getTitle();
-                } else {
-                    oldValue = ((BaseProperty) oldObject.safeget(mappingEntry.getKey())).getValue();
-                }
+        return propertyMappingPlan.apply(document, oldObject, newObject, context);
+    }
 
-                // Handle the case where we migrate the property to the document content or the document title
-                if (DOCUMENT_PROPERTIES.contains(mappingEntry.getValue())) {
-                    if (!(oldValue instanceof String)) {
-                        logger.warn("Not migrating property [{}] to [{}] as the value of the value of the property is"
-                            + " not a string.", mappingEntry.getKey(), mappingEntry.getValue());
-                    } else if (mappingEntry.getValue().equals(ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY)) {
-                        document.setTitle((String) oldValue);
-                    } else if (mappingEntry.getValue().equals(ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY)) {
-                        document.setContent((String) oldValue);
-                    }
-                } else {
-                    newObject.set(mappingEntry.getValue(), oldValue, xWikiContext);
-                }
-            }
-        }
+    private void saveDocmuent(XWikiDocument document, XWikiContext context) throws MigrationException
+    {
+        saveDocmuent(document, getSaveComment(), migrationParameters.isCreateNewVersion(), context);
     }
 
-    private void saveDocmuent(XWikiDocument document) throws MigrationException
+    private String getSaveComment()
     {
-        String saveComment;
         if (StringUtils.isNotBlank(migrationParameters.getSaveComment())) {
-            saveComment = migrationParameters.getSaveComment();
+            return migrationParameters.getSaveComment();
         } else {
-            saveComment = String.format("Migrate objects from XClass [%s] to XClass [%s] "
+            return String.format("Migrate objects from XClass [%s] to XClass [%s] "
                     + "as part of the migration \"%s\" (%s)",
                 migrationParameters.getOldClass(),
                 migrationParameters.getNewClass(),
                 migrationDescriptor.getMigrationName(),
                 migrationDescriptor.getMigrationUUID());
         }
+    }
 
+    private void saveDocmuent(XWikiDocument document, String saveComment, boolean createNewVersion,
+        XWikiContext context) throws MigrationException
+    {
         try {
-            if (!migrationParameters.isCreateNewVersion()) {
+            if (!createNewVersion) {
                 document.setContentDirty(false);
                 document.setMetaDataDirty(false);
             }
 
-            xwiki.saveDocument(document, saveComment, xWikiContext);
+            migrationThrottle.acquire();
+            long startTime = System.currentTimeMillis();
+            if (objectsOnlySaveClasses != null) {
+                storeDocumentNotifier.notifyUpdating(document, context);
+                storeObjectSaver.saveXObjects(document, objectsOnlySaveClasses, context);
+                // The XObjects are committed, so other cluster nodes and listeners can now be told about them
+                storeDocumentNotifier.notifyUpdated(document, context);
+            } else {
+                xwiki.saveDocument(document, saveComment, context);
+            }
+            migrationThrottle.recordSave(System.currentTimeMillis() - startTime);
         } catch (XWikiException e) {
             throw new MigrationException(String.format("Failed to save migrated document [%s]",
                 document.getDocumentReference()), e);
         }
+
+        documentSaved(document);
+    }
+
+    /**
+     * Write the given document in the store transaction of the current batch. Only the cancelable
+     * {@link org.xwiki.bridge.event.DocumentUpdatingEvent} is sent before the write : the cache eviction and the
+     * {@link org.xwiki.bridge.event.DocumentUpdatedEvent} are done once the transaction is committed, see
+     * {@link #migrateDocumentBatch(List, XWikiContext)}.
+     */
+    private void writeDocument(XWikiDocument document, String saveComment, boolean createNewVersion,
+        XWikiContext context) throws XWikiException
+    {
+        if (!createNewVersion) {
+            document.setContentDirty(false);
+            document.setMetaDataDirty(false);
+        }
+
+        if (objectsOnlySaveClasses != null) {
+            storeDocumentNotifier.notifyUpdating(document, context);
+            storeObjectSaver.saveXObjects(document, objectsOnlySaveClasses, context);
+        } else {
+            storeDocumentSaver.saveDocument(document, saveComment, context);
+        }
+    }
+
+    /**
+     * Account for a document whose save has been committed.
+     */
+    private void documentSaved(XWikiDocument document)
+    {
+        modifiedDocuments.incrementAndGet();
+
+        if (quietlySavedDocuments != null) {
+            quietlySavedDocuments.incrementAndGet();
+        }
+        if (reindexSpool != null) {
+            try {
+                reindexSpool.add(document.getDocumentReference());
+            } catch (IOException e) {
+                // The document is saved, only its reindex is missed
+                logger.error("Failed to add the document [{}] to the list of documents to reindex.",
+                    document.getDocumentReference(), e);
+            }
+        }
+    }
+
+    /**
+     * A stage of the migration pipeline, see {@link #migrateAllXObjectsPipelined()}.
+     */
+    @FunctionalInterface
+    private interface PipelineStage
+    {
+        /**
+         * @param context the context of the thread running the stage
+         * @throws Exception if the stage fails
+         */
+        void run(XWikiContext context) throws Exception;
     }
 }
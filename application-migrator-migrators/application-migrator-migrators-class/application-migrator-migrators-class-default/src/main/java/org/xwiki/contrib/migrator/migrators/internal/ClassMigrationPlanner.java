@@ -0,0 +1,193 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+/**
+ * Groups the class migrations that can be applied in a single pass over the documents, so that the documents that
+ * they have in common are loaded and saved only once.
+ * <p>
+ * Two migrations end up in the same group when some documents hold XObjects of both of their old XClasses. Migrations
+ * that have to be run on their own are never grouped : the ones renaming properties directly in the store, the ones
+ * setting execution options that a single pass cannot honour (workers, batches, pipeline, checkpoints or document
+ * cache bypass) and the ones chained with another migration, that is creating XObjects of an XClass that another
+ * migration migrates.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = ClassMigrationPlanner.class)
+@Singleton
+public class ClassMigrationPlanner
+{
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * @param migrationDescriptors the migrations to plan
+     * @return the groups of migrations, each migration being part of exactly one group
+     * @throws MigrationException if the documents shared by the migrations cannot be computed
+     */
+    public List<List<ClassMigrationDescriptor>> plan(Collection<ClassMigrationDescriptor> migrationDescriptors)
+        throws MigrationException
+    {
+        List<List<ClassMigrationDescriptor>> groups = new ArrayList<>();
+        List<ClassMigrationDescriptor> candidates = new ArrayList<>();
+        for (ClassMigrationDescriptor migrationDescriptor : migrationDescriptors) {
+            if (canBeFused(migrationDescriptor, migrationDescriptors)) {
+                candidates.add(migrationDescriptor);
+            } else {
+                groups.add(Collections.singletonList(migrationDescriptor));
+            }
+        }
+
+        // Merge the candidates sharing documents, each group being identified by the index of one of its members
+        int[] parents = new int[candidates.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for (int i = 0; i < parents.length; i++) {
+            for (int j = i + 1; j < parents.length; j++) {
+                int first = find(parents, i);
+                int second = find(parents, j);
+                if (first != second && overlap(getOldClass(candidates.get(i)), getOldClass(candidates.get(j)))) {
+                    parents[second] = first;
+                }
+            }
+        }
+
+        Map<Integer, List<ClassMigrationDescriptor>> fusedGroups = new LinkedHashMap<>();
+        for (int i = 0; i < parents.length; i++) {
+            fusedGroups.computeIfAbsent(find(parents, i), root -> new ArrayList<>()).add(candidates.get(i));
+        }
+        for (List<ClassMigrationDescriptor> group : fusedGroups.values()) {
+            if (group.size() > 1) {
+                logger.info("Fusing [{}] class migrations working on the same documents.", group.size());
+            }
+            groups.add(group);
+        }
+
+        return groups;
+    }
+
+    private boolean canBeFused(ClassMigrationDescriptor migrationDescriptor,
+        Collection<ClassMigrationDescriptor> migrationDescriptors)
+    {
+        ClassMigrationParameters parameters = getParameters(migrationDescriptor);
+        if (parameters.isDirectStoreRename() || hasExecutionOptions(parameters)) {
+            return false;
+        }
+
+        for (ClassMigrationDescriptor other : migrationDescriptors) {
+            ClassMigrationParameters otherParameters = getParameters(other);
+            if (other != migrationDescriptor
+                && (isTarget(parameters.getOldClass(), otherParameters)
+                    || isTarget(otherParameters.getOldClass(), parameters))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the given parameters change the way the documents are loaded or saved, which the single pass
+     * over the documents of a group does not support
+     */
+    private boolean hasExecutionOptions(ClassMigrationParameters parameters)
+    {
+        return parameters.getParallelism() > ClassMigrationParameters.DEFAULT_PARALLELISM
+            || parameters.getBatchSize() > ClassMigrationParameters.DEFAULT_BATCH_SIZE
+            || parameters.getPipelineQueueSize() > ClassMigrationParameters.DEFAULT_PIPELINE_QUEUE_SIZE
+            || parameters.getCheckpointInterval() > ClassMigrationParameters.DEFAULT_CHECKPOINT_INTERVAL
+            || parameters.isBypassDocumentCache();
+    }
+
+    /**
+     * @return true if the given migration creates XObjects of the given XClass
+     */
+    private boolean isTarget(String xclass, ClassMigrationParameters parameters)
+    {
+        return !parameters.isInPlace() && xclass.equals(parameters.getNewClass());
+    }
+
+    /**
+     * @return true if at least one document holds XObjects of both XClasses
+     */
+    private boolean overlap(String firstClass, String secondClass) throws MigrationException
+    {
+        if (firstClass.equals(secondClass)) {
+            return true;
+        }
+
+        try {
+            Query query = queryManager.createQuery("select first.name from BaseObject first, BaseObject second "
+                + "where first.name = second.name and first.className = :firstClass "
+                + "and second.className = :secondClass", Query.HQL);
+            query.bindValue("firstClass", firstClass);
+            query.bindValue("secondClass", secondClass);
+            query.setLimit(1);
+
+            return !query.execute().isEmpty();
+        } catch (QueryException e) {
+            throw new MigrationException(String.format(
+                "Failed to check whether the XClasses [%s] and [%s] are used in the same documents.",
+                firstClass, secondClass), e);
+        }
+    }
+
+    private int find(int[] parents, int index)
+    {
+        int root = index;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        return root;
+    }
+
+    private String getOldClass(ClassMigrationDescriptor migrationDescriptor)
+    {
+        return getParameters(migrationDescriptor).getOldClass();
+    }
+
+    private ClassMigrationParameters getParameters(ClassMigrationDescriptor migrationDescriptor)
+    {
+        return (ClassMigrationParameters) migrationDescriptor.getMigrationParameters();
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.PropertyInterface;
+import com.xpn.xwiki.objects.StringProperty;
+import com.xpn.xwiki.objects.classes.BaseClass;
+import com.xpn.xwiki.objects.classes.PropertyClass;
+
+/**
+ * Properties mapping of a class migration compiled once into a fixed list of copy operations, so that migrating an
+ * XObject does not have to interpret the mapping again.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+final class PropertyMappingPlan
+{
+    /**
+     * A single copy of a value from the migrated document or XObject to the new XObject or the document.
+     */
+    private interface CopyOperation
+    {
+        /**
+         * @return true if the copy actually changed the target value
+         */
+        boolean apply(XWikiDocument document, BaseObject oldObject, BaseObject newObject, XWikiContext context);
+    }
+
+    /**
+     * The value read from an XProperty that the migrated XObject does not have.
+     */
+    private static final Object MISSING_VALUE = new Object();
+
+    private final CopyOperation[] operations;
+
+    private PropertyMappingPlan(CopyOperation[] operations)
+    {
+        this.operations = operations;
+    }
+
+    /**
+     * Compile the given properties mapping.
+     *
+     * @param mapping the complete properties mapping, from the old property name to the new property name
+     * @param oldClass the XClass of the XObjects to migrate, used to resolve the conversion of each value
+     * @param newClass the XClass of the migrated XObjects
+     * @param inPlace whether the migration is done in place, in which case properties mapped to themselves are
+     * skipped
+     * @param logger the logger used to report values that cannot be copied
+     * @return the compiled plan
+     */
+    static PropertyMappingPlan compile(Map<String, String> mapping, BaseClass oldClass, BaseClass newClass,
+        boolean inPlace, Logger logger)
+    {
+        List<CopyOperation> operations = new ArrayList<>(mapping.size());
+
+        for (Map.Entry<String, String> mappingEntry : mapping.entrySet()) {
+            String source = mappingEntry.getKey();
+            String target = mappingEntry.getValue();
+
+            if (inPlace && source.equals(target)) {
+                continue;
+            }
+
+            ValueReader reader = getReader(source);
+            if (isDocumentProperty(target)) {
+                operations.add(new DocumentCopyOperation(source, target, reader, logger));
+            } else {
+                PropertyClass targetClass = getPropertyClass(newClass, target);
+                Class<? extends BaseProperty> sourceType = isDocumentProperty(source)
+                    ? StringProperty.class : getPropertyType(getPropertyClass(oldClass, source));
+                operations.add(new PropertyCopyOperation(source, target, reader, targetClass,
+                    PropertyValueConverters.get(sourceType, getPropertyType(targetClass)), logger));
+            }
+        }
+
+        return new PropertyMappingPlan(operations.toArray(new CopyOperation[0]));
+    }
+
+    /**
+     * Copy the mapped values of the given XObject.
+     *
+     * @param document the document holding the XObjects
+     * @param oldObject the XObject to migrate
+     * @param newObject the migrated XObject, which may be the same as the old one for in place migrations
+     * @param context the context to use
+     * @return true if at least one value of the new XObject or of the document has changed
+     */
+    boolean apply(XWikiDocument document, BaseObject oldObject, BaseObject newObject, XWikiContext context)
+    {
+        boolean changed = false;
+        for (CopyOperation operation : operations) {
+            changed |= operation.apply(document, oldObject, newObject, context);
+        }
+        return changed;
+    }
+
+    /**
+     * @return true if the plan copies values to the title or the content of the document, in which case it can only
+     * be applied to complete documents
+     */
+    boolean hasDocumentOperations()
+    {
+        for (CopyOperation operation : operations) {
+            if (operation instanceof DocumentCopyOperation) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of copy operations of the plan
+     */
+    int size()
+    {
+        return operations.length;
+    }
+
+    /**
+     * @return the number of values that could not be converted so far, by mapping entry ; entries without failures
+     * are not listed
+     */
+    Map<String, Long> getConversionFailures()
+    {
+        Map<String, Long> conversionFailures = new LinkedHashMap<>();
+        for (CopyOperation operation : operations) {
+            if (operation instanceof PropertyCopyOperation) {
+                PropertyCopyOperation propertyCopy = (PropertyCopyOperation) operation;
+                if (propertyCopy.failures.get() > 0) {
+                    conversionFailures.put(String.format("%s => %s", propertyCopy.source, propertyCopy.target),
+                        propertyCopy.failures.get());
+                }
+            }
+        }
+        return conversionFailures;
+    }
+
+    private static boolean isDocumentProperty(String property)
+    {
+        return ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY.equals(property)
+            || ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY.equals(property);
+    }
+
+    private static PropertyClass getPropertyClass(BaseClass xclass, String property)
+    {
+        PropertyInterface field = xclass.get(property);
+        return (field instanceof PropertyClass) ? (PropertyClass) field : null;
+    }
+
+    private static Class<? extends BaseProperty> getPropertyType(PropertyClass propertyClass)
+    {
+        if (propertyClass == null) {
+            return null;
+        }
+
+        BaseProperty property = propertyClass.newProperty();
+        return (property != null) ? property.getClass() : null;
+    }
+
+    private static ValueReader getReader(String source)
+    {
+        if (ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY.equals(source)) {
+            return (document, oldObject) -> document.getContent();
+        } else if (ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY.equals(source)) {
+            return (document, oldObject) -> document.getTitle();
+        } else {
+            return (document, oldObject) -> {
+                BaseProperty property = (BaseProperty) oldObject.safeget(source);
+                return (property != null) ? property.getValue() : MISSING_VALUE;
+            };
+        }
+    }
+
+    /**
+     * Reads the value to copy, either from the document or from the migrated XObject. Returns {@link #MISSING_VALUE}
+     * when the migrated XObject does not have the source XProperty.
+     */
+    private interface ValueReader
+    {
+        Object read(XWikiDocument document, BaseObject oldObject);
+    }
+
+    /**
+     * Copy a value to an XProperty of the new XObject.
+     */
+    private static final class PropertyCopyOperation implements CopyOperation
+    {
+        private final String source;
+
+        private final String target;
+
+        private final ValueReader reader;
+
+        private final PropertyClass targetClass;
+
+        private final Function<Object, Object> converter;
+
+        private final Logger logger;
+
+        private final AtomicLong failures = new AtomicLong();
+
+        PropertyCopyOperation(String source, String target, ValueReader reader, PropertyClass targetClass,
+            Function<Object, Object> converter, Logger logger)
+        {
+            this.source = source;
+            this.target = target;
+            this.reader = reader;
+            this.targetClass = targetClass;
+            this.converter = converter;
+            this.logger = logger;
+        }
+
+        @Override
+        public boolean apply(XWikiDocument document, BaseObject oldObject, BaseObject newObject,
+            XWikiContext context)
+        {
+            Object sourceValue = reader.read(document, oldObject);
+            if (sourceValue == MISSING_VALUE) {
+                logger.debug("Not migrating property [{}] to [{}] in document [{}] as the XObject does not have it.",
+                    source, target, document.getDocumentReference());
+                return false;
+            }
+
+            Object value;
+            try {
+                value = converter.apply(sourceValue);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                logger.debug("Failed to convert the value of [{}] to [{}] in document [{}]: [{}]", source, target,
+                    document.getDocumentReference(), e.getMessage());
+                return false;
+            }
+
+            BaseProperty previousProperty = (BaseProperty) newObject.safeget(target);
+            Object previousValue = (previousProperty != null) ? previousProperty.getValue() : null;
+
+            BaseProperty property;
+            if (targetClass == null) {
+                // Unknown target property : let the XObject resolve it
+                newObject.set(target, value, context);
+                property = (BaseProperty) newObject.safeget(target);
+            } else if (value instanceof String) {
+                // Same as BaseCollection#set, without resolving the XClass of the new XObject for every value
+                property = targetClass.fromString((String) value);
+            } else {
+                property = (previousProperty != null) ? previousProperty : targetClass.newProperty();
+                property.setValue(value);
+            }
+
+            if (property != null && targetClass != null) {
+                property.setOwnerDocument(newObject.getOwnerDocument());
+                newObject.safeput(target, property);
+            }
+
+            return (property != null)
+                && (previousProperty == null || !Objects.equals(previousValue, property.getValue()));
+        }
+    }
+
+    /**
+     * Copy a value to the title or the content of the document.
+     */
+    private static final class DocumentCopyOperation implements CopyOperation
+    {
+        private final String source;
+
+        private final boolean title;
+
+        private final ValueReader reader;
+
+        private final Logger logger;
+
+        DocumentCopyOperation(String source, String target, ValueReader reader, Logger logger)
+        {
+            this.source = source;
+            this.title = ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY.equals(target);
+            this.reader = reader;
+            this.logger = logger;
+        }
+
+        @Override
+        public boolean apply(XWikiDocument document, BaseObject oldObject, BaseObject newObject,
+            XWikiContext context)
+        {
+            Object value = reader.read(document, oldObject);
+
+            if (value == MISSING_VALUE) {
+                logger.debug("Not migrating property [{}] in document [{}] as the XObject does not have it.", source,
+                    document.getDocumentReference());
+                return false;
+            } else if (!(value instanceof String)) {
+                logger.warn("Not migrating property [{}] to [{}] as the value of the property is not a string.",
+                    source, title ? ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY
+                        : ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY);
+                return false;
+            } else if (title) {
+                if (value.equals(document.getTitle())) {
+                    return false;
+                }
+                document.setTitle((String) value);
+            } else {
+                if (value.equals(document.getContent())) {
+                    return false;
+                }
+                document.setContent((String) value);
+            }
+
+            return true;
+        }
+    }
+}
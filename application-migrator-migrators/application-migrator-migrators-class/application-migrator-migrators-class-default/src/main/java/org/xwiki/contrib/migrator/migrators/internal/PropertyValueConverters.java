@@ -0,0 +1,198 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.xwiki.text.StringUtils;
+
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.BaseStringProperty;
+import com.xpn.xwiki.objects.DateProperty;
+import com.xpn.xwiki.objects.DoubleProperty;
+import com.xpn.xwiki.objects.FloatProperty;
+import com.xpn.xwiki.objects.IntegerProperty;
+import com.xpn.xwiki.objects.ListProperty;
+import com.xpn.xwiki.objects.LongProperty;
+import com.xpn.xwiki.objects.NumberProperty;
+
+/**
+ * Registry of the conversions applied to the values copied from one XProperty to another one of a different type.
+ * The conversion of a mapping entry is resolved once, from the types of the old and new XProperties ; the resulting
+ * function then converts each value without looking at its type again.
+ * <p>
+ * Conversions producing a string let the new XProperty parse it as it would parse a submitted value. Conversions
+ * that cannot convert a value throw a runtime exception (usually an {@link IllegalArgumentException}).
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+final class PropertyValueConverters
+{
+    /**
+     * The conversion used when the value can be given as is to the new XProperty.
+     */
+    static final Function<Object, Object> IDENTITY = value -> value;
+
+    private static final String LIST_SEPARATOR = "|";
+
+    /**
+     * Casts to the different number types, by XProperty type. Casts to integers fail with an
+     * {@link ArithmeticException} instead of overflowing or dropping a fractional part.
+     */
+    private static final Map<Class<?>, Function<Number, Number>> NUMBER_CASTS = new HashMap<>();
+
+    static {
+        NUMBER_CASTS.put(IntegerProperty.class, number -> toBigDecimal(number).intValueExact());
+        NUMBER_CASTS.put(LongProperty.class, number -> toBigDecimal(number).longValueExact());
+        NUMBER_CASTS.put(FloatProperty.class, Number::floatValue);
+        NUMBER_CASTS.put(DoubleProperty.class, Number::doubleValue);
+    }
+
+    /**
+     * The kinds of XProperties between which values are converted.
+     */
+    private enum Kind
+    {
+        STRING,
+        NUMBER,
+        DATE,
+        LIST,
+        OTHER;
+
+        static Kind of(Class<?> propertyType)
+        {
+            if (BaseStringProperty.class.isAssignableFrom(propertyType)) {
+                return STRING;
+            } else if (NumberProperty.class.isAssignableFrom(propertyType)) {
+                return NUMBER;
+            } else if (DateProperty.class.isAssignableFrom(propertyType)) {
+                return DATE;
+            } else if (ListProperty.class.isAssignableFrom(propertyType)) {
+                return LIST;
+            }
+            return OTHER;
+        }
+    }
+
+    private PropertyValueConverters()
+    {
+    }
+
+    /**
+     * @param sourceType the type of the old XProperty, or null if unknown
+     * @param targetType the type of the new XProperty, or null if unknown
+     * @return the conversion to apply to the values copied between the two XProperties
+     */
+    static Function<Object, Object> get(Class<? extends BaseProperty> sourceType,
+        Class<? extends BaseProperty> targetType)
+    {
+        // Without the types, keep the implicit conversion done by the new XProperty
+        if (sourceType == null || targetType == null || sourceType.equals(targetType)) {
+            return IDENTITY;
+        }
+
+        Kind source = Kind.of(sourceType);
+        Kind target = Kind.of(targetType);
+
+        if (target == Kind.STRING) {
+            return PropertyValueConverters::toText;
+        } else if (source == Kind.LIST && target != Kind.LIST) {
+            // A list can only be converted to a single value if it holds at most one element
+            Function<Object, Object> elementConverter = get(BaseStringProperty.class, targetType);
+            return value -> elementConverter.apply(toSingleValue(value));
+        } else if (target == Kind.NUMBER) {
+            return getNumberConverter(source, NUMBER_CASTS.get(targetType));
+        } else if (target == Kind.DATE && source == Kind.NUMBER) {
+            return value -> (value == null) ? null : new Date(((Number) value).longValue());
+        } else if (target == Kind.LIST && source != Kind.STRING) {
+            return value -> (value == null) ? null : Collections.singletonList(toText(value));
+        }
+
+        // Strings are parsed by the new XProperty itself (dates, lists, booleans, ...)
+        return IDENTITY;
+    }
+
+    private static Function<Object, Object> getNumberConverter(Kind source, Function<Number, Number> cast)
+    {
+        if (cast == null) {
+            return IDENTITY;
+        }
+
+        switch (source) {
+            case NUMBER:
+                return value -> (value == null) ? null : cast.apply((Number) value);
+            case DATE:
+                return value -> (value == null) ? null : cast.apply(((Date) value).getTime());
+            case STRING:
+                return value -> {
+                    String text = StringUtils.trimToNull((String) value);
+                    // Parsing as a decimal first allows to accept any number notation, whatever the target type
+                    return (text == null) ? null : cast.apply(new BigDecimal(text));
+                };
+            default:
+                return IDENTITY;
+        }
+    }
+
+    private static BigDecimal toBigDecimal(Number number)
+    {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        } else if (number instanceof Integer || number instanceof Long || number instanceof Short
+            || number instanceof Byte) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        // Fails with a NumberFormatException for NaN and infinite values
+        return BigDecimal.valueOf(number.doubleValue());
+    }
+
+    private static Object toText(Object value)
+    {
+        if (value == null || value instanceof String) {
+            return value;
+        } else if (value instanceof Collection) {
+            return StringUtils.join((Collection<?>) value, LIST_SEPARATOR);
+        }
+        return value.toString();
+    }
+
+    private static Object toSingleValue(Object value)
+    {
+        if (!(value instanceof Collection)) {
+            return value;
+        }
+
+        Iterator<?> iterator = ((Collection<?>) value).iterator();
+        Object element = iterator.hasNext() ? iterator.next() : null;
+        if (iterator.hasNext()) {
+            throw new IllegalArgumentException(String.format("Cannot convert the list %s to a single value.",
+                value));
+        }
+        return (element == null) ? null : element.toString();
+    }
+}
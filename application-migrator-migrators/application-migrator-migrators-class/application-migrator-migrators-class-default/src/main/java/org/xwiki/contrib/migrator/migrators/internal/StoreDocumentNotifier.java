@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.DocumentUpdatingEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.ObservationManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.store.XWikiCacheStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+/**
+ * Tells the rest of the wiki about documents written directly in the store, bypassing
+ * {@link com.xpn.xwiki.XWiki#saveDocument(XWikiDocument, String, XWikiContext)} : the documents are removed from the
+ * local document cache and a {@link DocumentUpdatedEvent} is sent for each of them, so that the other cluster nodes
+ * invalidate their own cache and the listeners (search index, XObject events, ...) see the change.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = StoreDocumentNotifier.class)
+@Singleton
+public class StoreDocumentNotifier
+{
+    @Inject
+    private ObservationManager observationManager;
+
+    /**
+     * Remove the given document from the local document cache, so that it is loaded again from the store.
+     *
+     * @param document the document, only its reference and locale are used
+     * @param context the current context
+     */
+    public void evict(XWikiDocument document, XWikiContext context)
+    {
+        XWikiStoreInterface store = context.getWiki().getStore();
+
+        if (store instanceof XWikiCacheStore && ((XWikiCacheStore) store).getCache() != null) {
+            XWikiCacheStore cacheStore = (XWikiCacheStore) store;
+            cacheStore.getCache().remove(cacheStore.getKey(document, context));
+        }
+    }
+
+    /**
+     * Send a {@link DocumentUpdatingEvent} for the given document, before it is written, as
+     * {@link com.xpn.xwiki.XWiki#saveDocument(XWikiDocument, String, XWikiContext)} does.
+     *
+     * @param document the document about to be written, with its original document set to the document as it is in
+     * the store
+     * @param context the current context
+     * @throws XWikiException if a listener canceled the save
+     */
+    public void notifyUpdating(XWikiDocument document, XWikiContext context) throws XWikiException
+    {
+        DocumentUpdatingEvent event = new DocumentUpdatingEvent(document.getDocumentReference());
+        observationManager.notify(event, document, context);
+        if (event.isCanceled()) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_SAVING_DOC,
+                String.format("User canceled document save (%s)", event.getReason()));
+        }
+    }
+
+    /**
+     * Remove the given document from the local document cache and send a {@link DocumentUpdatedEvent} for it. This
+     * should only be called once the changes of the document have been committed.
+     *
+     * @param document the document as written in the store, with its original document set to the document as it was
+     * before the write
+     * @param context the current context
+     */
+    public void notifyUpdated(XWikiDocument document, XWikiContext context)
+    {
+        evict(document, context);
+        observationManager.notify(new DocumentUpdatedEvent(document.getDocumentReference()), document, context);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+/**
+ * Saves documents directly in the store, in the current transaction if one is open, doing what
+ * {@link com.xpn.xwiki.XWiki#saveDocument(XWikiDocument, String, XWikiContext)} does around the store call : the
+ * cancelable {@link org.xwiki.bridge.event.DocumentUpdatingEvent} is sent before the write, and the original document
+ * that the store replaces by a copy of the saved document is put back after it, so that the
+ * {@link org.xwiki.bridge.event.DocumentUpdatedEvent} sent once the transaction is committed (see
+ * {@link StoreDocumentNotifier#notifyUpdated(XWikiDocument, XWikiContext)}) still carries the previous version of
+ * the document.
+ * <p>
+ * Documents with attachments waiting to be removed are refused, as moving these attachments to the recycle bin is
+ * left to {@link com.xpn.xwiki.XWiki#saveDocument(XWikiDocument, String, XWikiContext)}. Migrated documents never
+ * have any, since migrations only change XObjects.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = StoreDocumentSaver.class)
+@Singleton
+public class StoreDocumentSaver
+{
+    @Inject
+    @Named("hibernate")
+    private XWikiStoreInterface hibernateStore;
+
+    @Inject
+    private StoreDocumentNotifier storeDocumentNotifier;
+
+    /**
+     * Write the given document in the store. The cache eviction and the
+     * {@link org.xwiki.bridge.event.DocumentUpdatedEvent} are left to the caller, once the write is committed.
+     *
+     * @param document the document to save, with its original document set to the document as it is in the store
+     * @param comment the comment of the save
+     * @param context the current context
+     * @throws XWikiException if a listener canceled the save, if the document has attachments to remove or if the
+     * document cannot be written
+     */
+    public void saveDocument(XWikiDocument document, String comment, XWikiContext context) throws XWikiException
+    {
+        if (!document.getAttachmentsToRemove().isEmpty()) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_SAVING_DOC,
+                String.format("The document [%s] has attachments to remove and must be saved through XWiki.",
+                    document.getDocumentReference()));
+        }
+
+        document.setComment(comment);
+        document.setMinorEdit(false);
+        storeDocumentNotifier.notifyUpdating(document, context);
+
+        // The store resets the original document to a copy of the saved document
+        XWikiDocument originalDocument = document.getOriginalDocument();
+        hibernateStore.saveXWikiDoc(document, context, false);
+        document.setOriginalDocument(originalDocument);
+    }
+}
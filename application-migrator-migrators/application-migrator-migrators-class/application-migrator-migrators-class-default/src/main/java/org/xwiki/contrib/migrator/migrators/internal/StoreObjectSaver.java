@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+/**
+ * Saves the XObjects of a document directly in the store, without saving the document itself. Only the rows of the
+ * given XObjects (and of the XObjects removed from the document) are written : the document row, its content and
+ * its history are left untouched.
+ * <p>
+ * Note that the saved documents do not get a new version. They are neither removed from the document cache nor
+ * announced through a document event : this is left to the caller, once the transaction holding the write is
+ * committed, see {@link StoreDocumentNotifier#notifyUpdated(XWikiDocument, XWikiContext)}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = StoreObjectSaver.class)
+@Singleton
+public class StoreObjectSaver
+{
+    @Inject
+    @Named("hibernate")
+    private XWikiStoreInterface hibernateStore;
+
+    /**
+     * Save the XObjects of the given XClasses held by the document, and delete the XObjects removed from it, in a
+     * single transaction (or in the current one if a transaction is already open).
+     *
+     * @param document the migrated document
+     * @param classReferences the XClasses of the XObjects to save
+     * @param context the current context
+     * @throws XWikiException if an error happens while writing the XObjects
+     */
+    public void saveXObjects(XWikiDocument document, Collection<DocumentReference> classReferences,
+        XWikiContext context) throws XWikiException
+    {
+        XWikiHibernateStore store = (XWikiHibernateStore) hibernateStore;
+        boolean transaction = store.beginTransaction(context);
+        boolean committed = false;
+        try {
+            for (BaseObject removedObject : document.getXObjectsToRemove()) {
+                if (removedObject != null) {
+                    store.deleteXWikiCollection(removedObject, context, false, false);
+                }
+            }
+            for (DocumentReference classReference : classReferences) {
+                for (BaseObject object : document.getXObjects(classReference)) {
+                    if (object != null) {
+                        store.saveXWikiCollection(object, context, false);
+                    }
+                }
+            }
+            committed = true;
+        } finally {
+            if (transaction) {
+                store.endTransaction(context, committed);
+            }
+        }
+
+        document.setXObjectsToRemove(new ArrayList<>());
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.Session;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Property;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.text.StringUtils;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.PropertyInterface;
+import com.xpn.xwiki.objects.classes.BaseClass;
+import com.xpn.xwiki.objects.classes.PropertyClass;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+import com.xpn.xwiki.store.hibernate.HibernateSessionFactory;
+
+/**
+ * Renames XProperties directly in the database, without saving the documents holding them. This is only possible for
+ * in place migrations renaming properties without changing their type : the property rows are copied to their new
+ * name in chunked transactions. As with a regular in place migration, the values stored under the old names are
+ * kept.
+ * <p>
+ * Once a chunk is committed, a {@link org.xwiki.bridge.event.DocumentUpdatedEvent} is sent for each of its
+ * documents, so that they are invalidated in the cache of every cluster node and reindexed. This requires loading the
+ * documents before and after the chunk, but the renamed documents still get no new version.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = StorePropertyRenamer.class)
+@Singleton
+public class StorePropertyRenamer
+{
+    private static final String IDS_PARAMETER = "ids";
+
+    private static final String SOURCE_PARAMETER = "source";
+
+    private static final String TARGET_PARAMETER = "target";
+
+    private static final String CLASS_PARAMETER = "className";
+
+    @Inject
+    @Named("hibernate")
+    private XWikiStoreInterface hibernateStore;
+
+    @Inject
+    private HibernateSessionFactory sessionFactory;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private Provider<XWikiContext> xWikiContextProvider;
+
+    @Inject
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    @Inject
+    private StoreDocumentNotifier storeDocumentNotifier;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Check if the given renames can be done directly in the database.
+     *
+     * @param className the XClass of the XObjects holding the properties
+     * @param renames the renames to do, from the old property name to the new property name
+     * @param xclass the current definition of the XClass
+     * @return true if every rename keeps the type of the property and does not involve the document title or content
+     * @throws MigrationException if an error happens
+     */
+    public boolean canRename(String className, Map<String, String> renames, BaseClass xclass)
+        throws MigrationException
+    {
+        for (Map.Entry<String, String> rename : renames.entrySet()) {
+            String source = rename.getKey();
+            String target = rename.getValue();
+
+            if (isDocumentProperty(source) || isDocumentProperty(target)) {
+                logger.info("Cannot rename [{}] to [{}] in the store : document fields are involved.", source, target);
+                return false;
+            }
+
+            // Chained renames (or swaps) would depend on the order in which they are done
+            if (renames.containsKey(target)) {
+                logger.info("Cannot rename [{}] to [{}] in the store : [{}] is renamed as well.", source, target,
+                    target);
+                return false;
+            }
+
+            String targetType = getTargetType(xclass, target);
+            if (targetType == null || getPropertyTable(targetType) == null) {
+                logger.info("Cannot rename [{}] to [{}] in the store : unsupported property type.", source, target);
+                return false;
+            }
+
+            for (String storedType : getStoredTypes(className, source, target)) {
+                if (!targetType.equals(storedType)) {
+                    logger.info("Cannot rename [{}] to [{}] in the store : the type changes from [{}] to [{}].",
+                        source, target, storedType, targetType);
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Rename the given properties in the database. {@link #canRename(String, Map, BaseClass)} should be checked
+     * first. Existing values stored under the new names are overwritten and the values stored under the old names are
+     * kept, as they would be by a regular in place migration.
+     *
+     * @param className the XClass of the XObjects holding the properties
+     * @param renames the renames to do, from the old property name to the new property name
+     * @param xclass the current definition of the XClass
+     * @param chunkSize the number of XObjects updated in each transaction
+     * @return the number of XObjects processed
+     * @throws MigrationException if an error happens
+     */
+    public long rename(String className, Map<String, String> renames, BaseClass xclass, int chunkSize)
+        throws MigrationException
+    {
+        XWikiContext xContext = xWikiContextProvider.get();
+        PropertyTable rootTable = getRootTable();
+
+        long processedObjects = 0;
+        long lastId = Long.MIN_VALUE;
+        List<Object[]> results;
+        do {
+            results = getObjectChunk(className, lastId, chunkSize);
+            if (results.isEmpty()) {
+                break;
+            }
+
+            List<Long> ids = new ArrayList<>(results.size());
+            Set<String> documents = new LinkedHashSet<>();
+            for (Object[] result : results) {
+                ids.add(((Number) result[0]).longValue());
+                documents.add((String) result[1]);
+            }
+
+            // Keep the documents as they were before the rename, for the listeners comparing the two versions
+            List<XWikiDocument> originalDocuments = loadDocuments(documents, xContext);
+
+            try {
+                getStore().executeWrite(xContext, session -> {
+                    for (Map.Entry<String, String> rename : renames.entrySet()) {
+                        renameChunk(session, ids, rename.getKey(), rename.getValue(), rootTable,
+                            getPropertyTable(getTargetType(xclass, rename.getValue())));
+                    }
+                    return null;
+                });
+            } catch (XWikiException e) {
+                throw new MigrationException(String.format("Failed to rename the properties of the XObjects [%s]",
+                    ids), e);
+            }
+
+            notifyDocuments(originalDocuments, xContext);
+
+            processedObjects += ids.size();
+            lastId = ids.get(ids.size() - 1);
+            logger.debug("[{}] XObjects renamed in the store.", processedObjects);
+        } while (results.size() == chunkSize);
+
+        return processedObjects;
+    }
+
+    private void renameChunk(Session session, Collection<Long> ids, String source, String target,
+        PropertyTable rootTable, PropertyTable valueTable)
+    {
+        // Remove any value already stored under the new name, starting with the table referencing the root one
+        deleteRows(session, valueTable, ids, target);
+        deleteRows(session, rootTable, ids, target);
+
+        // Copy the rows under the new name, starting with the table referenced by the value one. The rows of the old
+        // name are kept, as a regular in place migration keeps the old properties of the migrated XObjects.
+        copyRows(session, rootTable, ids, source, target);
+        copyRows(session, valueTable, ids, source, target);
+    }
+
+    private void copyRows(Session session, PropertyTable table, Collection<Long> ids, String source, String target)
+    {
+        List<String> otherColumns = table.columns.subList(2, table.columns.size());
+        String copiedColumns = otherColumns.isEmpty() ? StringUtils.EMPTY
+            : ", " + StringUtils.join(otherColumns, ", ");
+        session.createSQLQuery(String.format("insert into %s (%s, %s%s) select %s, :target%s from %s "
+            + "where %s in (:ids) and %s = :source", table.name, table.getIdColumn(), table.getNameColumn(),
+            copiedColumns, table.getIdColumn(), copiedColumns, table.name, table.getIdColumn(),
+            table.getNameColumn()))
+            .setParameter(TARGET_PARAMETER, target)
+            .setParameter(SOURCE_PARAMETER, source)
+            .setParameterList(IDS_PARAMETER, ids)
+            .executeUpdate();
+    }
+
+    private void deleteRows(Session session, PropertyTable table, Collection<Long> ids, String name)
+    {
+        session.createSQLQuery(String.format("delete from %s where %s in (:ids) and %s = :name", table.name,
+            table.getIdColumn(), table.getNameColumn()))
+            .setParameter("name", name)
+            .setParameterList(IDS_PARAMETER, ids)
+            .executeUpdate();
+    }
+
+    private List<Object[]> getObjectChunk(String className, long lastId, int chunkSize) throws MigrationException
+    {
+        try {
+            Query query = queryManager.createQuery("select obj.id, obj.name from BaseObject obj "
+                + "where obj.className = :className and obj.id > :lastId order by obj.id", Query.HQL);
+            query.bindValue(CLASS_PARAMETER, className);
+            query.bindValue("lastId", lastId);
+            query.setLimit(chunkSize);
+
+            return query.execute();
+        } catch (QueryException e) {
+            throw new MigrationException("Failed to get a list of XObjects to rename.", e);
+        }
+    }
+
+    private List<String> getStoredTypes(String className, String source, String target) throws MigrationException
+    {
+        try {
+            Query query = queryManager.createQuery("select distinct prop.classType "
+                + "from BaseObject obj, BaseProperty prop where obj.className = :className "
+                + "and prop.id.id = obj.id and (prop.id.name = :source or prop.id.name = :target)", Query.HQL);
+            query.bindValue(CLASS_PARAMETER, className);
+            query.bindValue(SOURCE_PARAMETER, source);
+            query.bindValue(TARGET_PARAMETER, target);
+
+            return query.execute();
+        } catch (QueryException e) {
+            throw new MigrationException(String.format("Failed to get the stored types of the property [%s]",
+                source), e);
+        }
+    }
+
+    private String getTargetType(BaseClass xclass, String target)
+    {
+        PropertyInterface field = xclass.get(target);
+
+        return (field instanceof PropertyClass) ? ((PropertyClass) field).newProperty().getClass().getName() : null;
+    }
+
+    /**
+     * @return the table holding the values of the given property type, or null if the values are not stored in a
+     * single table
+     */
+    private PropertyTable getPropertyTable(String propertyType)
+    {
+        PersistentClass mapping = sessionFactory.getConfiguration().getClassMapping(propertyType);
+        if (mapping == null || mapping.getKey() == null) {
+            return null;
+        }
+
+        // Some properties (e.g. database lists) store their values in a collection table which we don't handle
+        Iterator<?> properties = mapping.getPropertyIterator();
+        while (properties.hasNext()) {
+            if (((Property) properties.next()).getValue() instanceof org.hibernate.mapping.Collection) {
+                return null;
+            }
+        }
+
+        return new PropertyTable(mapping, mapping.getKey().getColumnIterator());
+    }
+
+    private PropertyTable getRootTable()
+    {
+        PersistentClass mapping = sessionFactory.getConfiguration().getClassMapping(BaseProperty.class.getName());
+        return new PropertyTable(mapping, mapping.getIdentifier().getColumnIterator());
+    }
+
+    private List<XWikiDocument> loadDocuments(Collection<String> documents, XWikiContext xContext)
+        throws MigrationException
+    {
+        List<XWikiDocument> xwikiDocuments = new ArrayList<>(documents.size());
+        for (String document : documents) {
+            try {
+                xwikiDocuments.add(xContext.getWiki().getDocument(documentReferenceResolver.resolve(document),
+                    xContext));
+            } catch (XWikiException e) {
+                throw new MigrationException(String.format("Failed to load the document [%s]", document), e);
+            }
+        }
+        return xwikiDocuments;
+    }
+
+    private void notifyDocuments(List<XWikiDocument> originalDocuments, XWikiContext xContext)
+        throws MigrationException
+    {
+        for (XWikiDocument originalDocument : originalDocuments) {
+            // Load the renamed document from the store rather than from the cache
+            storeDocumentNotifier.evict(originalDocument, xContext);
+            try {
+                XWikiDocument document =
+                    xContext.getWiki().getDocument(originalDocument.getDocumentReference(), xContext);
+                document.setOriginalDocument(originalDocument);
+                storeDocumentNotifier.notifyUpdated(document, xContext);
+            } catch (XWikiException e) {
+                throw new MigrationException(String.format("Failed to load the renamed document [%s]",
+                    originalDocument.getDocumentReference()), e);
+            }
+        }
+    }
+
+    private boolean isDocumentProperty(String property)
+    {
+        return ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY.equals(property)
+            || ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY.equals(property);
+    }
+
+    private XWikiHibernateBaseStore getStore()
+    {
+        return (XWikiHibernateBaseStore) hibernateStore;
+    }
+
+    /**
+     * The database table holding the values of a type of XProperty.
+     */
+    private static final class PropertyTable
+    {
+        private final String name;
+
+        private final List<String> columns = new ArrayList<>();
+
+        PropertyTable(PersistentClass mapping, Iterator<?> keyColumns)
+        {
+            this.name = mapping.getTable().getName();
+            // The key columns come first, in the order of the mapping : the XObject id then the property name
+            keyColumns.forEachRemaining(column -> columns.add(((Column) column).getName()));
+
+            // Then the remaining columns (such as the property type or the value), copied along with the keys
+            Iterator<?> tableColumns = mapping.getTable().getColumnIterator();
+            while (tableColumns.hasNext()) {
+                String column = ((Column) tableColumns.next()).getName();
+                if (!columns.contains(column)) {
+                    columns.add(column);
+                }
+            }
+        }
+
+        String getIdColumn()
+        {
+            return columns.get(0);
+        }
+
+        String getNameColumn()
+        {
+            return columns.get(1);
+        }
+    }
+}
@@ -30,6 +30,10 @@ import org.xwiki.contrib.migrator.migrators.AbstractWikiMigrationDescriptorProvi
 import org.xwiki.extension.ExtensionId;
 
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.IntegerProperty;
+import com.xpn.xwiki.objects.LargeStringProperty;
+import com.xpn.xwiki.objects.StringProperty;
 
 /**
  * Provides {@link ClassMigrationDescriptor} extracted from wiki pages through the XClass defined in
@@ -68,6 +72,28 @@ public class WikiClassMigrationDescriptorProvider extends AbstractWikiMigrationD
         migrationParameters.setSaveParameters(
             object.getStringValue(ClassMigrationClassDocumentInitializer.SAVE_COMMENT_PROPERTY),
             (object.getIntValue(ClassMigrationClassDocumentInitializer.CREATE_NEW_VERSION_PROPERTY, 0) == 1));
+        migrationParameters.setPageSize(object.getIntValue(ClassMigrationClassDocumentInitializer.PAGE_SIZE_PROPERTY,
+            ClassMigrationParameters.DEFAULT_PAGE_SIZE));
+        migrationParameters.setParallelism(object.getIntValue(
+            ClassMigrationClassDocumentInitializer.PARALLELISM_PROPERTY, ClassMigrationParameters.DEFAULT_PARALLELISM));
+        migrationParameters.setBatchSize(object.getIntValue(ClassMigrationClassDocumentInitializer.BATCH_SIZE_PROPERTY,
+            ClassMigrationParameters.DEFAULT_BATCH_SIZE));
+        migrationParameters.setCheckpointInterval(object.getIntValue(
+            ClassMigrationClassDocumentInitializer.CHECKPOINT_INTERVAL_PROPERTY,
+            ClassMigrationParameters.DEFAULT_CHECKPOINT_INTERVAL));
+        migrationParameters.setDirectStoreRename(
+            (object.getIntValue(ClassMigrationClassDocumentInitializer.DIRECT_STORE_RENAME_PROPERTY, 0) == 1));
+        migrationParameters.setBypassDocumentCache(
+            (object.getIntValue(ClassMigrationClassDocumentInitializer.BYPASS_DOCUMENT_CACHE_PROPERTY, 0) == 1));
+        migrationParameters.setPipelineQueueSize(object.getIntValue(
+            ClassMigrationClassDocumentInitializer.PIPELINE_QUEUE_SIZE_PROPERTY,
+            ClassMigrationParameters.DEFAULT_PIPELINE_QUEUE_SIZE));
+        migrationParameters.setQuietSave(
+            (object.getIntValue(ClassMigrationClassDocumentInitializer.QUIET_SAVE_PROPERTY, 0) == 1));
+        migrationParameters.setDeferredReindex(
+            (object.getIntValue(ClassMigrationClassDocumentInitializer.DEFERRED_REINDEX_PROPERTY, 0) == 1));
+        migrationParameters.setObjectsOnlySave(
+            (object.getIntValue(ClassMigrationClassDocumentInitializer.OBJECTS_ONLY_SAVE_PROPERTY, 0) == 1));
 
         return new ClassMigrationDescriptor(
                 extensionId,
@@ -82,6 +108,34 @@ public class WikiClassMigrationDescriptorProvider extends AbstractWikiMigrationD
         return ClassMigrationClassDocumentInitializer.CLASS_REFERENCE;
     }
 
+    @Override
+    protected Map<String, Class<? extends BaseProperty>> getXClassPropertyTypes()
+    {
+        Map<String, Class<? extends BaseProperty>> propertyTypes = getCommonXClassPropertyTypes();
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.IN_PLACE_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.OLD_CLASS_PROPERTY, StringProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.NEW_CLASS_PROPERTY, StringProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.REMOVE_OLD_XCLASS_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.REMOVE_OLD_XOBJECT_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.PROPERTIES_MAPPING_PROPERTY,
+            LargeStringProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.SAVE_COMMENT_PROPERTY, StringProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.CREATE_NEW_VERSION_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.PAGE_SIZE_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.PARALLELISM_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.BATCH_SIZE_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.CHECKPOINT_INTERVAL_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.DIRECT_STORE_RENAME_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.BYPASS_DOCUMENT_CACHE_PROPERTY,
+            IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.PIPELINE_QUEUE_SIZE_PROPERTY,
+            IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.QUIET_SAVE_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.DEFERRED_REINDEX_PROPERTY, IntegerProperty.class);
+        propertyTypes.put(ClassMigrationClassDocumentInitializer.OBJECTS_ONLY_SAVE_PROPERTY, IntegerProperty.class);
+        return propertyTypes;
+    }
+
     private Map<String, String> extractMapping(String stringMapping)
     {
         Map<String, String> resultMapping = new HashMap<>();
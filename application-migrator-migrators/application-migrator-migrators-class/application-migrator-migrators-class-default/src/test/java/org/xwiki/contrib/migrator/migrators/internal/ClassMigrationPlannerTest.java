@@ -0,0 +1,160 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ClassMigrationPlanner}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class ClassMigrationPlannerTest
+{
+    private static final ExtensionId EXTENSION_ID = new ExtensionId("dummy-extension", "1.0");
+
+    private static final String FIRST_CLASS = "Migrations.FirstClass";
+
+    private static final String SECOND_CLASS = "Migrations.SecondClass";
+
+    private static final String NEW_CLASS = "Migrations.NewClass";
+
+    @Rule
+    public final MockitoComponentMockingRule<ClassMigrationPlanner> mocker =
+        new MockitoComponentMockingRule<>(ClassMigrationPlanner.class);
+
+    private QueryManager queryManager;
+
+    private Query query;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        queryManager = mocker.getInstance(QueryManager.class);
+        query = mock(Query.class);
+        when(queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(query);
+        when(query.bindValue(anyString(), any())).thenReturn(query);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.execute()).thenReturn(Collections.singletonList("Main.SharedDocument"));
+    }
+
+    @Test
+    public void fuseMigrationsSharingDocuments() throws Exception
+    {
+        ClassMigrationDescriptor first = createMigration(FIRST_CLASS);
+        ClassMigrationDescriptor second = createMigration(SECOND_CLASS);
+
+        List<List<ClassMigrationDescriptor>> groups = mocker.getComponentUnderTest().plan(Arrays.asList(first, second));
+
+        assertEquals(Collections.singletonList(Arrays.asList(first, second)), groups);
+    }
+
+    @Test
+    public void fuseMigrationsOfTheSameXClassWithoutQuery() throws Exception
+    {
+        ClassMigrationDescriptor first = createMigration(FIRST_CLASS);
+        ClassMigrationDescriptor second = createMigration(FIRST_CLASS);
+
+        List<List<ClassMigrationDescriptor>> groups = mocker.getComponentUnderTest().plan(Arrays.asList(first, second));
+
+        assertEquals(Collections.singletonList(Arrays.asList(first, second)), groups);
+        verify(queryManager, never()).createQuery(anyString(), anyString());
+    }
+
+    @Test
+    public void keepApartMigrationsWithoutSharedDocuments() throws Exception
+    {
+        when(query.execute()).thenReturn(Collections.emptyList());
+        ClassMigrationDescriptor first = createMigration(FIRST_CLASS);
+        ClassMigrationDescriptor second = createMigration(SECOND_CLASS);
+
+        List<List<ClassMigrationDescriptor>> groups = mocker.getComponentUnderTest().plan(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList(Collections.singletonList(first), Collections.singletonList(second)), groups);
+    }
+
+    @Test
+    public void keepApartMigrationsWithExecutionOptions() throws Exception
+    {
+        ClassMigrationDescriptor reference = createMigration(FIRST_CLASS);
+        ClassMigrationDescriptor parallel = createMigration(FIRST_CLASS);
+        getParameters(parallel).setParallelism(4);
+        ClassMigrationDescriptor batched = createMigration(FIRST_CLASS);
+        getParameters(batched).setBatchSize(50);
+        ClassMigrationDescriptor pipelined = createMigration(FIRST_CLASS);
+        getParameters(pipelined).setPipelineQueueSize(10);
+        ClassMigrationDescriptor checkpointed = createMigration(FIRST_CLASS);
+        getParameters(checkpointed).setCheckpointInterval(100);
+        ClassMigrationDescriptor uncached = createMigration(FIRST_CLASS);
+        getParameters(uncached).setBypassDocumentCache(true);
+
+        List<List<ClassMigrationDescriptor>> groups = mocker.getComponentUnderTest()
+            .plan(Arrays.asList(reference, parallel, batched, pipelined, checkpointed, uncached));
+
+        assertEquals(Arrays.asList(Collections.singletonList(parallel), Collections.singletonList(batched),
+            Collections.singletonList(pipelined), Collections.singletonList(checkpointed),
+            Collections.singletonList(uncached), Collections.singletonList(reference)), groups);
+    }
+
+    @Test
+    public void keepApartChainedMigrations() throws Exception
+    {
+        ClassMigrationDescriptor first = new ClassMigrationDescriptor(EXTENSION_ID, "first", "",
+            new ClassMigrationParameters(false, FIRST_CLASS, SECOND_CLASS, false, true, Collections.emptyMap()));
+        ClassMigrationDescriptor second = new ClassMigrationDescriptor(EXTENSION_ID, "second", "",
+            new ClassMigrationParameters(false, SECOND_CLASS, NEW_CLASS, false, true, Collections.emptyMap()));
+
+        List<List<ClassMigrationDescriptor>> groups = mocker.getComponentUnderTest().plan(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList(Collections.singletonList(first), Collections.singletonList(second)), groups);
+    }
+
+    private ClassMigrationDescriptor createMigration(String oldClass)
+    {
+        return new ClassMigrationDescriptor(EXTENSION_ID, "migration", "",
+            new ClassMigrationParameters(true, oldClass, "", false, false, Collections.emptyMap()));
+    }
+
+    private ClassMigrationParameters getParameters(ClassMigrationDescriptor migrationDescriptor)
+    {
+        return (ClassMigrationParameters) migrationDescriptor.getMigrationParameters();
+    }
+}
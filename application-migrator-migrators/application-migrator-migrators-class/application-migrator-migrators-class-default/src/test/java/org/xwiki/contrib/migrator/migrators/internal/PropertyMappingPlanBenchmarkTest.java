@@ -0,0 +1,213 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.classes.BaseClass;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Timed comparison of the copy operations compiled by {@link PropertyMappingPlan} with the previous interpretation of
+ * the properties mapping for every XObject.
+ * <p>
+ * This is not a JMH benchmark (the project does not use JMH) : both approaches are run on the same XObjects after a
+ * warm up, the timings are only logged and the test fails only if the two approaches do not produce the same values,
+ * so that it does not depend on the speed of the build machine.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class PropertyMappingPlanBenchmarkTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyMappingPlanBenchmarkTest.class);
+
+    private static final int OBJECT_COUNT = 5000;
+
+    private static final int WARM_UP_ROUNDS = 3;
+
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static final String NAME = "name";
+
+    private static final String NEW_NAME = "newName";
+
+    private static final String COUNT = "count";
+
+    private static final String NEW_COUNT = "newCount";
+
+    private static final String TITLE = "title";
+
+    private static final DocumentReference NEW_CLASS_REFERENCE =
+        new DocumentReference("xwiki", "Migrations", "NewClass");
+
+    private final Map<String, String> mapping = new LinkedHashMap<>();
+
+    private BaseClass oldClass;
+
+    private BaseClass newClass;
+
+    private XWikiContext context;
+
+    private List<XWikiDocument> documents;
+
+    private List<BaseObject> oldObjects;
+
+    @Before
+    public void setUp()
+    {
+        oldClass = new BaseClass();
+        oldClass.addTextField(NAME, NAME, 30);
+        oldClass.addNumberField(COUNT, COUNT, 10, "long");
+
+        newClass = new BaseClass();
+        newClass.addTextField(NEW_NAME, NEW_NAME, 30);
+        newClass.addNumberField(NEW_COUNT, NEW_COUNT, 10, "long");
+        newClass.addTextField(TITLE, TITLE, 30);
+
+        mapping.put(NAME, NEW_NAME);
+        mapping.put(COUNT, NEW_COUNT);
+        mapping.put(ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY, TITLE);
+
+        // BaseObject#set resolves the XClass of the XObject for every value, here without the cost of the document
+        // cache lookup done by a running wiki
+        XWiki xwiki = mock(XWiki.class);
+        context = mock(XWikiContext.class);
+        when(context.getWiki()).thenReturn(xwiki);
+        when(xwiki.getXClass(any(DocumentReference.class), any(XWikiContext.class))).thenReturn(newClass);
+
+        documents = new ArrayList<>(OBJECT_COUNT);
+        oldObjects = new ArrayList<>(OBJECT_COUNT);
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            XWikiDocument document = new XWikiDocument(new DocumentReference("xwiki", "Space", "Page" + i));
+            document.setTitle("Title " + i);
+            BaseObject oldObject = new BaseObject();
+            oldObject.setStringValue(NAME, "Name " + i);
+            oldObject.setLongValue(COUNT, i);
+            documents.add(document);
+            oldObjects.add(oldObject);
+        }
+    }
+
+    @Test
+    public void compareWithPerObjectMapping()
+    {
+        PropertyMappingPlan plan =
+            PropertyMappingPlan.compile(mapping, oldClass, newClass, false, mock(Logger.class));
+
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            runPlan(plan);
+            runPerObjectMapping();
+        }
+
+        long planTime = 0;
+        long perObjectTime = 0;
+        List<BaseObject> planObjects = null;
+        List<BaseObject> perObjectObjects = null;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long startTime = System.nanoTime();
+            planObjects = runPlan(plan);
+            planTime += System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            perObjectObjects = runPerObjectMapping();
+            perObjectTime += System.nanoTime() - startTime;
+        }
+
+        LOGGER.info("Migrated [{}] XObjects [{}] times: [{}] ms with the compiled plan, [{}] ms with the per object "
+            + "mapping.", OBJECT_COUNT, MEASURED_ROUNDS, TimeUnit.NANOSECONDS.toMillis(planTime),
+            TimeUnit.NANOSECONDS.toMillis(perObjectTime));
+
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            for (String target : mapping.values()) {
+                assertEquals(getValue(perObjectObjects.get(i), target), getValue(planObjects.get(i), target));
+            }
+        }
+    }
+
+    private List<BaseObject> runPlan(PropertyMappingPlan plan)
+    {
+        List<BaseObject> newObjects = new ArrayList<>(OBJECT_COUNT);
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            BaseObject newObject = createNewObject();
+            plan.apply(documents.get(i), oldObjects.get(i), newObject, context);
+            newObjects.add(newObject);
+        }
+        return newObjects;
+    }
+
+    /**
+     * The properties mapping as it was applied before being compiled : the mapping is interpreted again for every
+     * XObject, and the XClass of the new XObject is resolved for every value.
+     */
+    private List<BaseObject> runPerObjectMapping()
+    {
+        List<BaseObject> newObjects = new ArrayList<>(OBJECT_COUNT);
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            XWikiDocument document = documents.get(i);
+            BaseObject newObject = createNewObject();
+            for (Map.Entry<String, String> mappingEntry : mapping.entrySet()) {
+                Object oldValue;
+                if (mappingEntry.getKey().equals(ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY)) {
+                    oldValue = document.getContent();
+                } else if (mappingEntry.getKey().equals(ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY)) {
+                    oldValue = document.getTitle();
+                } else {
+                    oldValue = ((BaseProperty) oldObjects.get(i).safeget(mappingEntry.getKey())).getValue();
+                }
+                newObject.set(mappingEntry.getValue(), oldValue, context);
+            }
+            newObjects.add(newObject);
+        }
+        return newObjects;
+    }
+
+    private BaseObject createNewObject()
+    {
+        BaseObject newObject = new BaseObject();
+        newObject.setXClassReference(NEW_CLASS_REFERENCE);
+        return newObject;
+    }
+
+    private Object getValue(BaseObject object, String property)
+    {
+        BaseProperty value = (BaseProperty) object.safeget(property);
+        return (value != null) ? value.getValue() : null;
+    }
+}
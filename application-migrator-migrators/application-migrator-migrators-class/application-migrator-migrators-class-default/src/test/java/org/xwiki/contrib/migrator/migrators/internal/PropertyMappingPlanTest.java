@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.classes.BaseClass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link PropertyMappingPlan}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class PropertyMappingPlanTest
+{
+    private static final String NAME = "name";
+
+    private static final String NEW_NAME = "newName";
+
+    private static final String COUNT = "count";
+
+    private static final String NEW_COUNT = "newCount";
+
+    private final Logger logger = mock(Logger.class);
+
+    private BaseClass oldClass;
+
+    private BaseClass newClass;
+
+    private XWikiDocument document;
+
+    private BaseObject oldObject;
+
+    private BaseObject newObject;
+
+    @Before
+    public void setUp()
+    {
+        oldClass = new BaseClass();
+        oldClass.addTextField(NAME, NAME, 30);
+        oldClass.addNumberField(COUNT, COUNT, 10, "long");
+
+        newClass = new BaseClass();
+        newClass.addTextField(NEW_NAME, NEW_NAME, 30);
+        newClass.addNumberField(NEW_COUNT, NEW_COUNT, 10, "integer");
+
+        document = new XWikiDocument(new DocumentReference("xwiki", "Space", "Page"));
+        oldObject = new BaseObject();
+        newObject = new BaseObject();
+    }
+
+    @Test
+    public void copyToXProperty()
+    {
+        oldObject.setStringValue(NAME, "Alice");
+        PropertyMappingPlan plan = compile(NAME, NEW_NAME, false);
+
+        assertTrue(plan.apply(document, oldObject, newObject, null));
+        assertEquals("Alice", newObject.getStringValue(NEW_NAME));
+
+        // Copying the same value again does not change the new XObject
+        assertFalse(plan.apply(document, oldObject, newObject, null));
+    }
+
+    @Test
+    public void copyToXPropertyWithConversion()
+    {
+        oldObject.setLongValue(COUNT, 42L);
+        PropertyMappingPlan plan = compile(COUNT, NEW_COUNT, false);
+
+        assertTrue(plan.apply(document, oldObject, newObject, null));
+        assertEquals(42, newObject.getIntValue(NEW_COUNT));
+        assertTrue(plan.getConversionFailures().isEmpty());
+    }
+
+    @Test
+    public void copyToXPropertyWithConversionFailure()
+    {
+        oldObject.setStringValue(NAME, "not a number");
+        PropertyMappingPlan plan = compile(NAME, NEW_COUNT, false);
+
+        assertFalse(plan.apply(document, oldObject, newObject, null));
+        assertNull(newObject.safeget(NEW_COUNT));
+        assertEquals(Collections.singletonMap("name => newCount", 1L), plan.getConversionFailures());
+    }
+
+    @Test
+    public void copyMissingXProperty()
+    {
+        PropertyMappingPlan plan = compile(NAME, NEW_NAME, false);
+
+        assertFalse(plan.apply(document, oldObject, newObject, null));
+        assertNull(newObject.safeget(NEW_NAME));
+        // A missing value is not a conversion failure
+        assertTrue(plan.getConversionFailures().isEmpty());
+    }
+
+    @Test
+    public void copyDocumentContentToXProperty()
+    {
+        document.setContent("Some content");
+        PropertyMappingPlan plan = compile(ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY, NEW_NAME, false);
+
+        assertFalse(plan.hasDocumentOperations());
+        assertTrue(plan.apply(document, oldObject, newObject, null));
+        assertEquals("Some content", newObject.getStringValue(NEW_NAME));
+    }
+
+    @Test
+    public void copyToDocumentTitle()
+    {
+        oldObject.setStringValue(NAME, "Title");
+        PropertyMappingPlan plan = compile(NAME, ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY, false);
+
+        assertTrue(plan.hasDocumentOperations());
+        assertTrue(plan.apply(document, oldObject, newObject, null));
+        assertEquals("Title", document.getTitle());
+        assertFalse(plan.apply(document, oldObject, newObject, null));
+    }
+
+    @Test
+    public void copyToDocumentContent()
+    {
+        oldObject.setStringValue(NAME, "Content");
+        PropertyMappingPlan plan = compile(NAME, ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY, false);
+
+        assertTrue(plan.apply(document, oldObject, newObject, null));
+        assertEquals("Content", document.getContent());
+    }
+
+    @Test
+    public void copyNonStringToDocument()
+    {
+        oldObject.setLongValue(COUNT, 42L);
+        document.setContent("Content");
+        PropertyMappingPlan plan = compile(COUNT, ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY, false);
+
+        assertFalse(plan.apply(document, oldObject, newObject, null));
+        assertEquals("Content", document.getContent());
+    }
+
+    @Test
+    public void copyMissingXPropertyToDocument()
+    {
+        document.setTitle("Title");
+        PropertyMappingPlan plan = compile(NAME, ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY, false);
+
+        assertFalse(plan.apply(document, oldObject, newObject, null));
+        assertEquals("Title", document.getTitle());
+    }
+
+    @Test
+    public void compileInPlaceSkipsIdentityMappings()
+    {
+        assertEquals(0, compile(NAME, NAME, true).size());
+        assertEquals(1, compile(NAME, NAME, false).size());
+    }
+
+    private PropertyMappingPlan compile(String source, String target, boolean inPlace)
+    {
+        BaseClass targetClass = inPlace ? oldClass : newClass;
+        return PropertyMappingPlan.compile(Collections.singletonMap(source, target), oldClass, targetClass, inPlace,
+            logger);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.xpn.xwiki.objects.DateProperty;
+import com.xpn.xwiki.objects.DoubleProperty;
+import com.xpn.xwiki.objects.IntegerProperty;
+import com.xpn.xwiki.objects.LargeStringProperty;
+import com.xpn.xwiki.objects.LongProperty;
+import com.xpn.xwiki.objects.StringListProperty;
+import com.xpn.xwiki.objects.StringProperty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link PropertyValueConverters}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class PropertyValueConvertersTest
+{
+    @Test
+    public void identityForUnknownOrSameTypes()
+    {
+        assertSame(PropertyValueConverters.IDENTITY, PropertyValueConverters.get(null, IntegerProperty.class));
+        assertSame(PropertyValueConverters.IDENTITY, PropertyValueConverters.get(StringProperty.class, null));
+        assertSame(PropertyValueConverters.IDENTITY,
+            PropertyValueConverters.get(IntegerProperty.class, IntegerProperty.class));
+    }
+
+    @Test
+    public void anythingToString()
+    {
+        assertEquals("42", PropertyValueConverters.get(IntegerProperty.class, StringProperty.class).apply(42));
+        assertEquals("a|b",
+            PropertyValueConverters.get(StringListProperty.class, LargeStringProperty.class)
+                .apply(Arrays.asList("a", "b")));
+        assertNull(PropertyValueConverters.get(IntegerProperty.class, StringProperty.class).apply(null));
+    }
+
+    @Test
+    public void stringToInteger()
+    {
+        Function<Object, Object> converter = PropertyValueConverters.get(StringProperty.class, IntegerProperty.class);
+
+        assertEquals(42, converter.apply(" 42 "));
+        assertEquals(1000, converter.apply("1e3"));
+        assertEquals(3, converter.apply("3.0"));
+        assertNull(converter.apply(" "));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void stringWithFractionToInteger()
+    {
+        PropertyValueConverters.get(StringProperty.class, IntegerProperty.class).apply("3.7");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void stringWithFractionToLong()
+    {
+        PropertyValueConverters.get(StringProperty.class, LongProperty.class).apply("3.7");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void stringOverflowingInteger()
+    {
+        PropertyValueConverters.get(StringProperty.class, IntegerProperty.class).apply("3000000000");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void invalidStringToLong()
+    {
+        PropertyValueConverters.get(StringProperty.class, LongProperty.class).apply("not a number");
+    }
+
+    @Test
+    public void numberToNumber()
+    {
+        assertEquals(3.0d, PropertyValueConverters.get(IntegerProperty.class, DoubleProperty.class).apply(3));
+        assertEquals(3L, PropertyValueConverters.get(DoubleProperty.class, LongProperty.class).apply(3.0d));
+        assertEquals(42, PropertyValueConverters.get(LongProperty.class, IntegerProperty.class).apply(42L));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void doubleWithFractionToLong()
+    {
+        PropertyValueConverters.get(DoubleProperty.class, LongProperty.class).apply(3.7d);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void longOverflowingInteger()
+    {
+        PropertyValueConverters.get(LongProperty.class, IntegerProperty.class).apply(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void dateToNumberAndBack()
+    {
+        Date date = new Date(1234567L);
+
+        assertEquals(1234567L, PropertyValueConverters.get(DateProperty.class, LongProperty.class).apply(date));
+        assertEquals(date, PropertyValueConverters.get(LongProperty.class, DateProperty.class).apply(1234567L));
+    }
+
+    @Test
+    public void listToSingleValue()
+    {
+        Function<Object, Object> converter =
+            PropertyValueConverters.get(StringListProperty.class, IntegerProperty.class);
+
+        assertEquals(42, converter.apply(Collections.singletonList("42")));
+        assertNull(converter.apply(Collections.emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void listWithSeveralElementsToSingleValue()
+    {
+        PropertyValueConverters.get(StringListProperty.class, IntegerProperty.class).apply(Arrays.asList("1", "2"));
+    }
+
+    @Test
+    public void singleValueToList()
+    {
+        assertEquals(Collections.singletonList("42"),
+            PropertyValueConverters.get(IntegerProperty.class, StringListProperty.class).apply(42));
+    }
+
+    @Test
+    public void stringsAreParsedByTheNewXProperty()
+    {
+        assertSame(PropertyValueConverters.IDENTITY,
+            PropertyValueConverters.get(StringProperty.class, DateProperty.class));
+        assertSame(PropertyValueConverters.IDENTITY,
+            PropertyValueConverters.get(StringProperty.class, StringListProperty.class));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.DocumentUpdatingEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.store.XWikiCacheStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link StoreDocumentNotifier}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class StoreDocumentNotifierTest
+{
+    private static final String CACHE_KEY = "xwiki:Space.Page";
+
+    @Rule
+    public final MockitoComponentMockingRule<StoreDocumentNotifier> mocker =
+        new MockitoComponentMockingRule<>(StoreDocumentNotifier.class);
+
+    private XWiki xwiki;
+
+    private XWikiContext context;
+
+    private XWikiDocument document;
+
+    @Before
+    public void setUp()
+    {
+        xwiki = mock(XWiki.class);
+        context = mock(XWikiContext.class);
+        when(context.getWiki()).thenReturn(xwiki);
+
+        document = new XWikiDocument(new DocumentReference("xwiki", "Space", "Page"));
+        document.setOriginalDocument(new XWikiDocument(document.getDocumentReference()));
+    }
+
+    @Test
+    public void notifyUpdatedEvictsAndSendsEvent() throws Exception
+    {
+        XWikiCacheStore cacheStore = mock(XWikiCacheStore.class);
+        @SuppressWarnings("unchecked")
+        Cache<XWikiDocument> cache = mock(Cache.class);
+        when(xwiki.getStore()).thenReturn(cacheStore);
+        when(cacheStore.getCache()).thenReturn(cache);
+        when(cacheStore.getKey(document, context)).thenReturn(CACHE_KEY);
+
+        mocker.getComponentUnderTest().notifyUpdated(document, context);
+
+        verify(cache).remove(CACHE_KEY);
+        assertUpdatedEvent();
+    }
+
+    @Test
+    public void notifyUpdatedWithoutCache() throws Exception
+    {
+        when(xwiki.getStore()).thenReturn(mock(XWikiStoreInterface.class));
+
+        mocker.getComponentUnderTest().notifyUpdated(document, context);
+
+        assertUpdatedEvent();
+    }
+
+    @Test
+    public void notifyUpdating() throws Exception
+    {
+        mocker.getComponentUnderTest().notifyUpdating(document, context);
+
+        ObservationManager observationManager = mocker.getInstance(ObservationManager.class);
+        verify(observationManager).notify(any(DocumentUpdatingEvent.class), same(document), same(context));
+    }
+
+    @Test
+    public void notifyUpdatingCanceled() throws Exception
+    {
+        ObservationManager observationManager = mocker.getInstance(ObservationManager.class);
+        doAnswer(invocation -> {
+            ((DocumentUpdatingEvent) invocation.getArgument(0)).cancel("locked");
+            return null;
+        }).when(observationManager).notify(any(DocumentUpdatingEvent.class), same(document), same(context));
+
+        try {
+            mocker.getComponentUnderTest().notifyUpdating(document, context);
+            fail("The canceled save should be reported");
+        } catch (XWikiException expected) {
+            assertTrue(expected.getMessage().contains("locked"));
+        }
+    }
+
+    private void assertUpdatedEvent() throws Exception
+    {
+        ObservationManager observationManager = mocker.getInstance(ObservationManager.class);
+        ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+        verify(observationManager).notify(eventCaptor.capture(), same(document), same(context));
+
+        assertTrue(new DocumentUpdatedEvent(document.getDocumentReference()).matches(eventCaptor.getValue()));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link StoreDocumentSaver}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class StoreDocumentSaverTest
+{
+    private static final String COMMENT = "Migrate objects";
+
+    @Rule
+    public final MockitoComponentMockingRule<StoreDocumentSaver> mocker =
+        new MockitoComponentMockingRule<>(StoreDocumentSaver.class,
+            Collections.singletonList(XWikiStoreInterface.class));
+
+    private XWikiHibernateStore store;
+
+    private XWikiContext context;
+
+    private XWikiDocument originalDocument;
+
+    private XWikiDocument document;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        store = mock(XWikiHibernateStore.class);
+        mocker.registerComponent(XWikiStoreInterface.class, "hibernate", store);
+        context = mock(XWikiContext.class);
+
+        // Like the real store, replace the original document by a copy of the saved document
+        doAnswer(invocation -> {
+            XWikiDocument savedDocument = invocation.getArgument(0);
+            savedDocument.setOriginalDocument(savedDocument.clone());
+            return null;
+        }).when(store).saveXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class), anyBoolean());
+
+        DocumentReference documentReference = new DocumentReference("xwiki", "Space", "Page");
+        originalDocument = new XWikiDocument(documentReference);
+        document = originalDocument.clone();
+        document.setOriginalDocument(originalDocument);
+        BaseObject object = new BaseObject();
+        object.setXClassReference(new DocumentReference("xwiki", "Space", "NewClass"));
+        document.addXObject(object);
+    }
+
+    @Test
+    public void saveDocumentKeepsThePreviousVersionForTheUpdatedEvent() throws Exception
+    {
+        mocker.getComponentUnderTest().saveDocument(document, COMMENT, context);
+
+        StoreDocumentNotifier storeDocumentNotifier = mocker.getInstance(StoreDocumentNotifier.class);
+        InOrder inOrder = inOrder(storeDocumentNotifier, store);
+        inOrder.verify(storeDocumentNotifier).notifyUpdating(document, context);
+        inOrder.verify(store).saveXWikiDoc(document, context, false);
+
+        // The DocumentUpdatedEvent sent after the commit compares the document with its original document
+        assertSame(originalDocument, document.getOriginalDocument());
+        assertNotSame(document, document.getOriginalDocument());
+        assertTrue(document.getOriginalDocument().getXObjects().isEmpty());
+        assertEquals(1, document.getXObjects().size());
+        assertEquals(COMMENT, document.getComment());
+    }
+
+    @Test
+    public void saveDocumentCanceledByListener() throws Exception
+    {
+        StoreDocumentNotifier storeDocumentNotifier = mocker.getInstance(StoreDocumentNotifier.class);
+        doThrow(new XWikiException()).when(storeDocumentNotifier).notifyUpdating(document, context);
+
+        try {
+            mocker.getComponentUnderTest().saveDocument(document, COMMENT, context);
+            fail("The canceled save should be reported");
+        } catch (XWikiException expected) {
+            verify(store, never()).saveXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class), anyBoolean());
+        }
+    }
+}
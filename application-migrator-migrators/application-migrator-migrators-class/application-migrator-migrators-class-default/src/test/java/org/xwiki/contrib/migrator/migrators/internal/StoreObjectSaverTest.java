@@ -0,0 +1,156 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link StoreObjectSaver}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class StoreObjectSaverTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<StoreObjectSaver> mocker =
+        new MockitoComponentMockingRule<>(StoreObjectSaver.class,
+            Collections.singletonList(XWikiStoreInterface.class));
+
+    private final DocumentReference migratedClass = new DocumentReference("xwiki", "Space", "NewClass");
+
+    private final DocumentReference otherClass = new DocumentReference("xwiki", "Space", "OtherClass");
+
+    private XWikiHibernateStore store;
+
+    private XWikiContext context;
+
+    private XWikiDocument document;
+
+    private BaseObject migratedObject;
+
+    private BaseObject otherObject;
+
+    private BaseObject removedObject;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        store = mock(XWikiHibernateStore.class);
+        mocker.registerComponent(XWikiStoreInterface.class, "hibernate", store);
+        context = mock(XWikiContext.class);
+
+        document = new XWikiDocument(new DocumentReference("xwiki", "Space", "Page"));
+        migratedObject = addObject(migratedClass);
+        otherObject = addObject(otherClass);
+        removedObject = new BaseObject();
+        removedObject.setXClassReference(new DocumentReference("xwiki", "Space", "OldClass"));
+        List<BaseObject> removedObjects = new ArrayList<>();
+        removedObjects.add(removedObject);
+        document.setXObjectsToRemove(removedObjects);
+    }
+
+    @Test
+    public void saveXObjectsInOwnTransaction() throws Exception
+    {
+        when(store.beginTransaction(context)).thenReturn(true);
+
+        mocker.getComponentUnderTest().saveXObjects(document, Collections.singletonList(migratedClass), context);
+
+        InOrder inOrder = inOrder(store);
+        inOrder.verify(store).beginTransaction(context);
+        inOrder.verify(store).deleteXWikiCollection(removedObject, context, false, false);
+        inOrder.verify(store).saveXWikiCollection(migratedObject, context, false);
+        inOrder.verify(store).endTransaction(context, true);
+        verify(store, never()).saveXWikiCollection(otherObject, context, false);
+        assertTrue(document.getXObjectsToRemove().isEmpty());
+
+        // The document cache is left to the caller, once the write is committed
+        verifyZeroInteractions(context);
+    }
+
+    @Test
+    public void saveXObjectsInCurrentTransaction() throws Exception
+    {
+        when(store.beginTransaction(context)).thenReturn(false);
+
+        mocker.getComponentUnderTest().saveXObjects(document, Collections.singletonList(migratedClass), context);
+
+        verify(store).saveXWikiCollection(migratedObject, context, false);
+        verify(store, never()).endTransaction(any(XWikiContext.class), anyBoolean());
+        verifyZeroInteractions(context);
+    }
+
+    @Test
+    public void rollbackWhenTheWriteFails() throws Exception
+    {
+        when(store.beginTransaction(context)).thenReturn(true);
+        XWikiException exception = new XWikiException();
+        doThrow(exception).when(store).saveXWikiCollection(migratedObject, context, false);
+
+        try {
+            mocker.getComponentUnderTest().saveXObjects(document, Collections.singletonList(migratedClass), context);
+            fail("The failure of the write should be reported");
+        } catch (XWikiException e) {
+            assertSame(exception, e);
+        }
+
+        verify(store).endTransaction(context, false);
+        assertEquals(Collections.singletonList(removedObject), document.getXObjectsToRemove());
+    }
+
+    private BaseObject addObject(DocumentReference classReference)
+    {
+        BaseObject object = new BaseObject();
+        object.setXClassReference(classReference);
+        document.addXObject(object);
+        return object;
+    }
+}
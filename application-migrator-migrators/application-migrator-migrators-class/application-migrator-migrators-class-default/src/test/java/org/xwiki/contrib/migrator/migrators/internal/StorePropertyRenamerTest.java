@@ -0,0 +1,356 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.PersistentClass;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.StringProperty;
+import com.xpn.xwiki.objects.classes.BaseClass;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+import com.xpn.xwiki.store.hibernate.HibernateSessionFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link StorePropertyRenamer}, run against an in-memory database using the XWiki mapping.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class StorePropertyRenamerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<StorePropertyRenamer> mocker =
+        new MockitoComponentMockingRule<>(StorePropertyRenamer.class,
+            Collections.singletonList(XWikiStoreInterface.class));
+
+    private static final String CLASS_NAME = "Space.MyClass";
+
+    private static final String OTHER_CLASS_NAME = "Space.OtherClass";
+
+    private static final String SOURCE = "source";
+
+    private static final String TARGET = "target";
+
+    private Configuration configuration;
+
+    private SessionFactory hibernateSessionFactory;
+
+    private BaseClass xclass;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver");
+        configuration.setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:renamer" + System.nanoTime());
+        configuration.setProperty("hibernate.connection.username", "sa");
+        configuration.setProperty("hibernate.connection.password", "");
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.addResource("xwiki.hbm.xml");
+        hibernateSessionFactory = configuration.buildSessionFactory();
+
+        HibernateSessionFactory sessionFactory = mocker.getInstance(HibernateSessionFactory.class);
+        when(sessionFactory.getConfiguration()).thenReturn(configuration);
+
+        XWikiHibernateStore store = mock(XWikiHibernateStore.class);
+        when(store.executeWrite(any(XWikiContext.class), any())).thenAnswer(invocation -> {
+            XWikiHibernateBaseStore.HibernateCallback<?> callback = invocation.getArgument(1);
+            return inTransaction(callback::doInHibernate);
+        });
+        mocker.registerComponent(XWikiStoreInterface.class, "hibernate", store);
+
+        QueryManager queryManager = mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(anyString(), eq(Query.HQL)))
+            .thenAnswer(invocation -> createQuery(invocation.getArgument(0)));
+
+        DocumentReferenceResolver<String> documentReferenceResolver =
+            mocker.getInstance(DocumentReferenceResolver.TYPE_STRING);
+        when(documentReferenceResolver.resolve(anyString()))
+            .thenAnswer(invocation -> new DocumentReference("xwiki", "Space", (String) invocation.getArgument(0)));
+
+        XWiki xwiki = mock(XWiki.class);
+        when(xwiki.getDocument(any(DocumentReference.class), any(XWikiContext.class)))
+            .thenAnswer(invocation -> new XWikiDocument(invocation.getArgument(0)));
+        XWikiContext xContext = mock(XWikiContext.class);
+        when(xContext.getWiki()).thenReturn(xwiki);
+        Provider<XWikiContext> xWikiContextProvider = mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xWikiContextProvider.get()).thenReturn(xContext);
+
+        xclass = new BaseClass();
+        xclass.addTextField(SOURCE, SOURCE, 30);
+        xclass.addTextField(TARGET, TARGET, 30);
+        xclass.addTextAreaField("area", "area", 30, 5);
+    }
+
+    @After
+    public void tearDown()
+    {
+        hibernateSessionFactory.close();
+    }
+
+    @Test
+    public void canRename() throws Exception
+    {
+        insertObject(1, "A", CLASS_NAME);
+        insertProperty(1, SOURCE, "value");
+
+        assertTrue(mocker.getComponentUnderTest().canRename(CLASS_NAME, Collections.singletonMap(SOURCE, TARGET),
+            xclass));
+    }
+
+    @Test
+    public void canRenameWithDocumentFields() throws Exception
+    {
+        assertFalse(mocker.getComponentUnderTest().canRename(CLASS_NAME,
+            Collections.singletonMap(SOURCE, ClassMigrationDescriptor.DOC_CONTENT_MAPPING_PROPERTY), xclass));
+        assertFalse(mocker.getComponentUnderTest().canRename(CLASS_NAME,
+            Collections.singletonMap(ClassMigrationDescriptor.DOC_TITLE_MAPPING_PROPERTY, TARGET), xclass));
+    }
+
+    @Test
+    public void canRenameWithChainedRenames() throws Exception
+    {
+        Map<String, String> renames = new HashMap<>();
+        renames.put(SOURCE, TARGET);
+        renames.put(TARGET, "other");
+
+        assertFalse(mocker.getComponentUnderTest().canRename(CLASS_NAME, renames, xclass));
+    }
+
+    @Test
+    public void canRenameWithUnknownTarget() throws Exception
+    {
+        assertFalse(mocker.getComponentUnderTest().canRename(CLASS_NAME, Collections.singletonMap(SOURCE, "unknown"),
+            xclass));
+    }
+
+    @Test
+    public void canRenameWithTypeChange() throws Exception
+    {
+        insertObject(1, "A", CLASS_NAME);
+        insertProperty(1, SOURCE, "value");
+
+        // The values are stored as strings while the new property holds large strings
+        assertFalse(mocker.getComponentUnderTest().canRename(CLASS_NAME, Collections.singletonMap(SOURCE, "area"),
+            xclass));
+    }
+
+    @Test
+    public void renameInChunks() throws Exception
+    {
+        insertObject(1, "A", CLASS_NAME);
+        insertProperty(1, SOURCE, "a");
+        insertProperty(1, TARGET, "previous");
+        insertObject(2, "B", CLASS_NAME);
+        insertProperty(2, SOURCE, "b");
+        insertObject(3, "C", CLASS_NAME);
+        insertProperty(3, SOURCE, "c");
+        insertObject(4, "D", OTHER_CLASS_NAME);
+        insertProperty(4, SOURCE, "d");
+
+        assertEquals(3, mocker.getComponentUnderTest().rename(CLASS_NAME, Collections.singletonMap(SOURCE, TARGET),
+            xclass, 2));
+
+        // The values are copied, overwriting the existing ones, and the old values are kept like in a regular in
+        // place migration
+        for (Object[] expected : Arrays.asList(new Object[] { 1L, "a" }, new Object[] { 2L, "b" },
+            new Object[] { 3L, "c" })) {
+            assertEquals(expected[1], getValue((Long) expected[0], TARGET));
+            assertEquals(expected[1], getValue((Long) expected[0], SOURCE));
+        }
+
+        // The XObjects of other XClasses are left untouched
+        assertNull(getValue(4L, TARGET));
+        assertEquals("d", getValue(4L, SOURCE));
+
+        // Every renamed document is notified once, with its version from before the rename
+        StoreDocumentNotifier storeDocumentNotifier = mocker.getInstance(StoreDocumentNotifier.class);
+        ArgumentCaptor<XWikiDocument> documentCaptor = ArgumentCaptor.forClass(XWikiDocument.class);
+        verify(storeDocumentNotifier, times(3)).notifyUpdated(documentCaptor.capture(), any(XWikiContext.class));
+        List<String> notifiedDocuments = new ArrayList<>();
+        for (XWikiDocument document : documentCaptor.getAllValues()) {
+            assertEquals(document.getDocumentReference(), document.getOriginalDocument().getDocumentReference());
+            notifiedDocuments.add(document.getDocumentReference().getName());
+        }
+        assertEquals(Arrays.asList("A", "B", "C"), notifiedDocuments);
+    }
+
+    private Query createQuery(String statement) throws Exception
+    {
+        Map<String, Object> values = new HashMap<>();
+        int[] limit = new int[1];
+
+        Query query = mock(Query.class);
+        when(query.bindValue(anyString(), any())).thenAnswer(invocation -> {
+            values.put(invocation.getArgument(0), invocation.getArgument(1));
+            return query;
+        });
+        when(query.setLimit(anyInt())).thenAnswer(invocation -> {
+            limit[0] = invocation.getArgument(0);
+            return query;
+        });
+        when(query.execute()).thenAnswer(invocation -> inTransaction(session -> {
+            org.hibernate.Query hibernateQuery = session.createQuery(statement);
+            values.forEach(hibernateQuery::setParameter);
+            if (limit[0] > 0) {
+                hibernateQuery.setMaxResults(limit[0]);
+            }
+            return hibernateQuery.list();
+        }));
+
+        return query;
+    }
+
+    private void insertObject(long id, String document, String className) throws Exception
+    {
+        PersistentClass mapping = configuration.getClassMapping(BaseObject.class.getName());
+        Map<String, Object> values = new HashMap<>();
+        values.put(getColumns(mapping.getIdentifier().getColumnIterator()).get(0), id);
+        values.put(getColumn(mapping, "name"), document);
+        values.put(getColumn(mapping, "className"), className);
+        values.put(getColumn(mapping, "number"), (int) id);
+        values.put(getColumn(mapping, "guid"), "guid" + id);
+        insert(mapping.getTable().getName(), values);
+    }
+
+    private void insertProperty(long id, String name, String value) throws Exception
+    {
+        PersistentClass rootMapping = configuration.getClassMapping(BaseProperty.class.getName());
+        List<String> rootKey = getColumns(rootMapping.getIdentifier().getColumnIterator());
+        Map<String, Object> rootValues = new HashMap<>();
+        rootValues.put(rootKey.get(0), id);
+        rootValues.put(rootKey.get(1), name);
+        rootValues.put(getColumn(rootMapping, "classType"), StringProperty.class.getName());
+        insert(rootMapping.getTable().getName(), rootValues);
+
+        PersistentClass mapping = configuration.getClassMapping(StringProperty.class.getName());
+        List<String> key = getColumns(mapping.getKey().getColumnIterator());
+        Map<String, Object> values = new HashMap<>();
+        values.put(key.get(0), id);
+        values.put(key.get(1), name);
+        values.put(getColumn(mapping, "value"), value);
+        insert(mapping.getTable().getName(), values);
+    }
+
+    private Object getValue(long id, String name) throws Exception
+    {
+        PersistentClass mapping = configuration.getClassMapping(StringProperty.class.getName());
+        List<String> key = getColumns(mapping.getKey().getColumnIterator());
+        return inTransaction(session -> session.createSQLQuery(String.format("select %s from %s where %s = :id "
+            + "and %s = :name", getColumn(mapping, "value"), mapping.getTable().getName(), key.get(0), key.get(1)))
+            .setParameter("id", id)
+            .setParameter("name", name)
+            .uniqueResult());
+    }
+
+    private void insert(String table, Map<String, Object> values) throws Exception
+    {
+        List<String> columns = new ArrayList<>(values.keySet());
+        inTransaction(session -> {
+            org.hibernate.Query query = session.createSQLQuery(String.format("insert into %s (%s) values (:%s)",
+                table, String.join(", ", columns), String.join(", :", columns)));
+            columns.forEach(column -> query.setParameter(column, values.get(column)));
+            return query.executeUpdate();
+        });
+    }
+
+    private String getColumn(PersistentClass mapping, String property)
+    {
+        return getColumns(mapping.getProperty(property).getColumnIterator()).get(0);
+    }
+
+    private List<String> getColumns(Iterator<?> columns)
+    {
+        List<String> names = new ArrayList<>();
+        columns.forEachRemaining(column -> names.add(((Column) column).getName()));
+        return names;
+    }
+
+    private <T> T inTransaction(SessionWork<T> work) throws Exception
+    {
+        Session session = hibernateSessionFactory.openSession();
+        Transaction transaction = session.beginTransaction();
+        try {
+            T result = work.run(session);
+            transaction.commit();
+            return result;
+        } catch (Exception e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Some work done with a Hibernate session.
+     *
+     * @param <T> the type of the result
+     */
+    private interface SessionWork<T>
+    {
+        T run(Session session) throws Exception;
+    }
+}
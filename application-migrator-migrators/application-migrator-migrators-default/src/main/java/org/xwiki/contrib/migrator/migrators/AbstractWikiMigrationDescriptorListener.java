@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators;
+
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.XObjectAddedEvent;
+import com.xpn.xwiki.internal.event.XObjectDeletedEvent;
+import com.xpn.xwiki.internal.event.XObjectEvent;
+import com.xpn.xwiki.internal.event.XObjectUpdatedEvent;
+import com.xpn.xwiki.objects.BaseObjectReference;
+
+/**
+ * Keeps the descriptor index of an {@link AbstractWikiMigrationDescriptorProvider} up to date when its migration
+ * XObjects are added, updated or deleted. The listener only receives the events of the XObjects of the XClass
+ * handled by the provider.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public abstract class AbstractWikiMigrationDescriptorListener extends AbstractEventListener
+{
+    /**
+     * Build a new {@link AbstractWikiMigrationDescriptorListener}.
+     *
+     * @param name the name of the listener
+     * @param xclassReference the local reference of the XClass of the migration XObjects, as a string
+     */
+    public AbstractWikiMigrationDescriptorListener(String name, String xclassReference)
+    {
+        super(name, new XObjectAddedEvent(BaseObjectReference.any(xclassReference)),
+            new XObjectUpdatedEvent(BaseObjectReference.any(xclassReference)),
+            new XObjectDeletedEvent(BaseObjectReference.any(xclassReference)), new WikiDeletedEvent());
+    }
+
+    /**
+     * @return the provider whose index should be maintained
+     */
+    protected abstract AbstractWikiMigrationDescriptorProvider getDescriptorProvider();
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof XObjectEvent) {
+            getDescriptorProvider().updateDescriptorIndex((XWikiDocument) source,
+                new BaseObjectReference(((XObjectEvent) event).getReference()).getXClassReference());
+        } else {
+            getDescriptorProvider().invalidateDescriptorIndex(((WikiDeletedEvent) event).getWikiId());
+        }
+    }
+}
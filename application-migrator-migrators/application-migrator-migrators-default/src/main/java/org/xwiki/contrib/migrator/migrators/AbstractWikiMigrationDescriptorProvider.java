@@ -19,28 +19,38 @@
  */
 package org.xwiki.contrib.migrator.migrators;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 
 import org.xwiki.contrib.migrator.AbstractMigrationDescriptor;
 import org.xwiki.contrib.migrator.MigrationDescriptorProvider;
 import org.xwiki.contrib.migrator.MigrationException;
+import org.xwiki.contrib.migrator.migrators.internal.MigrationDocumentLoader;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 
-import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
-import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.IntegerProperty;
+import com.xpn.xwiki.objects.LargeStringProperty;
+import com.xpn.xwiki.objects.StringProperty;
 
 /**
  * This abstract is a helper for defining {@link MigrationDescriptorProvider} that are based on XObjects.
@@ -48,6 +58,11 @@ import com.xpn.xwiki.objects.BaseObject;
  * and once those XObjects are extracted, implementation-specific methods are being called in order to instantiate
  * the actual MigrationDescriptor.
  *
+ * The migration XObjects of a wiki are loaded once and kept in an index by extension id. This index is then
+ * maintained through {@link #updateDescriptorIndex(XWikiDocument, DocumentReference)} when the migration XObjects are
+ * modified. New descriptors are created from the indexed XObjects on each call to {@link #getMigrations(ExtensionId)}
+ * so that callers never share them.
+ *
  * @version $Id$
  * @since 1.1
  */
@@ -64,32 +79,137 @@ public abstract class AbstractWikiMigrationDescriptorProvider implements Migrati
     @Inject
     protected Provider<XWikiContext> xWikiContextProvider;
 
+    @Inject
+    private MigrationDocumentLoader migrationDocumentLoader;
+
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localEntityReferenceSerializer;
+
+    /**
+     * The descriptor index of each wiki, lazily built.
+     */
+    private final Map<String, MigrationDescriptorIndex> descriptorIndexes = new ConcurrentHashMap<>();
+
     @Override
     public Set<AbstractMigrationDescriptor> getMigrations(ExtensionId extensionId) throws MigrationException
     {
-        Set<AbstractMigrationDescriptor> resultSet = new HashSet<>();
+        // A migration defined in several documents is only returned once
+        Map<String, AbstractMigrationDescriptor> migrations = new LinkedHashMap<>();
+        for (BaseObject object : getDescriptorIndex(xWikiContextProvider.get().getWikiId()).get(extensionId.getId())) {
+            AbstractMigrationDescriptor migrationDescriptor = createFromBaseObject(object);
+            migrations.putIfAbsent(migrationDescriptor.getMigrationUUID(), migrationDescriptor);
+        }
+
+        return new HashSet<>(migrations.values());
+    }
+
+    /**
+     * Update the descriptor index of the wiki of the given document after a change of one of its XObjects. Nothing
+     * is done if the XObject is not a migration XObject handled by this provider, or if the index of the wiki has
+     * not been built yet.
+     *
+     * @param document the new version of the document
+     * @param xclassReference the XClass of the XObject that has been added, updated or removed
+     * @since 1.2
+     */
+    public synchronized void updateDescriptorIndex(XWikiDocument document, DocumentReference xclassReference)
+    {
+        DocumentReference documentReference = document.getDocumentReference();
+        MigrationDescriptorIndex descriptorIndex =
+            descriptorIndexes.get(documentReference.getWikiReference().getName());
+        DocumentReference classReference = stringDocumentReferenceResolver.resolve(getXClassReferenceAsString(),
+            documentReference.getWikiReference());
+
+        if (descriptorIndex != null && classReference.equals(xclassReference)) {
+            // The XObjects of the document are copied as the document can still be modified after the event
+            List<BaseObject> objects = new ArrayList<>();
+            for (BaseObject object : document.getXObjects(classReference)) {
+                if (object != null) {
+                    objects.add((BaseObject) object.clone());
+                }
+            }
+
+            descriptorIndex.put(documentReference, groupByExtensionId(objects));
+        }
+    }
+
+    /**
+     * Drop the descriptor index of the given wiki, it will be rebuilt on the next access.
+     *
+     * @param wikiId the wiki identifier
+     * @since 1.2
+     */
+    public void invalidateDescriptorIndex(String wikiId)
+    {
+        descriptorIndexes.remove(wikiId);
+    }
+
+    private MigrationDescriptorIndex getDescriptorIndex(String wikiId) throws MigrationException
+    {
+        MigrationDescriptorIndex descriptorIndex = descriptorIndexes.get(wikiId);
+
+        if (descriptorIndex == null) {
+            synchronized (this) {
+                descriptorIndex = descriptorIndexes.get(wikiId);
+
+                if (descriptorIndex == null) {
+                    descriptorIndex = new MigrationDescriptorIndex();
+                    Map<DocumentReference, List<BaseObject>> objects =
+                        (getXClassPropertyTypes() != null) ? loadDescriptorsFromProjection() : loadDescriptors();
+                    for (Map.Entry<DocumentReference, List<BaseObject>> documentObjects : objects.entrySet()) {
+                        descriptorIndex.put(documentObjects.getKey(), groupByExtensionId(documentObjects.getValue()));
+                    }
+
+                    descriptorIndexes.put(wikiId, descriptorIndex);
+                }
+            }
+        }
+
+        return descriptorIndex;
+    }
+
+    private Map<String, List<BaseObject>> groupByExtensionId(List<BaseObject> objects)
+    {
+        Map<String, List<BaseObject>> objectsByExtensionId = new HashMap<>();
+        for (BaseObject object : objects) {
+            objectsByExtensionId.computeIfAbsent(createFromBaseObject(object).getExtensionId().getId(),
+                k -> new ArrayList<>()).add(object);
+        }
+
+        return objectsByExtensionId;
+    }
+
+    /**
+     * Load the migration XObjects of the current wiki. Only these XObjects are needed, so they are loaded in bulk
+     * instead of loading each document holding them.
+     *
+     * @return the detached XObjects, grouped by document
+     */
+    private Map<DocumentReference, List<BaseObject>> loadDescriptors() throws MigrationException
+    {
+        Map<DocumentReference, List<BaseObject>> resultMap = new HashMap<>();
 
         Set<DocumentReference> documentSet = getDocumentSet();
 
         if (documentSet.size() != 0) {
-            XWikiContext context = xWikiContextProvider.get();
-            XWiki xwiki = context.getWiki();
-
-            DocumentReference classReference =
-                    stringDocumentReferenceResolver.resolve(getXClassReferenceAsString());
+            List<String> documents = new ArrayList<>();
+            for (DocumentReference documentReference : documentSet) {
+                documents.add(localEntityReferenceSerializer.serialize(documentReference));
+            }
 
             try {
-                for (DocumentReference documentReference : documentSet) {
-                    XWikiDocument document = xwiki.getDocument(documentReference, context);
-
-                    for (BaseObject object : document.getXObjects(classReference)) {
-                        AbstractMigrationDescriptor abstractMigrationDescriptor = createFromBaseObject(object);
-                        if (extensionId.getId().equals(abstractMigrationDescriptor.getExtensionId().getId())) {
-                            resultSet.add(abstractMigrationDescriptor);
-                        }
-                    }
+                Map<String, List<BaseObject>> objects =
+                    migrationDocumentLoader.loadXObjects(documents, getXClassReferenceAsString());
+
+                for (Map.Entry<String, List<BaseObject>> documentObjects : objects.entrySet()) {
+                    DocumentReference documentReference =
+                        stringDocumentReferenceResolver.resolve(documentObjects.getKey());
+
+                    resultMap.computeIfAbsent(documentReference, k -> new ArrayList<>())
+                        .addAll(documentObjects.getValue());
                 }
-            } catch (XWikiException e) {
+            } catch (QueryException e) {
                 throw new MigrationException(
                         String.format("Failed to retrieve a list of [%s] migration XObjects.",
                                 getXClassReferenceAsString()), e);
@@ -97,7 +217,83 @@ public abstract class AbstractWikiMigrationDescriptorProvider implements Migrati
 
         }
 
-        return resultSet;
+        return resultMap;
+    }
+
+    /**
+     * Load the migration XObjects of the current wiki with a single query selecting directly the properties declared
+     * in {@link #getXClassPropertyTypes()}, instead of loading every document holding a migration XObject.
+     *
+     * @return the detached XObjects, holding only the declared properties, grouped by document
+     */
+    private Map<DocumentReference, List<BaseObject>> loadDescriptorsFromProjection()
+        throws MigrationException
+    {
+        Map<String, Class<? extends BaseProperty>> propertyTypes = getXClassPropertyTypes();
+
+        // Each property is selected through a subquery so that objects with missing properties are still returned
+        StringBuilder statement = new StringBuilder("select obj.name, obj.number");
+        int propertyIndex = 0;
+        for (Class<? extends BaseProperty> propertyType : propertyTypes.values()) {
+            statement.append(String.format(", (select prop%1$d.value from %2$s prop%1$d "
+                + "where prop%1$d.id.id = obj.id and prop%1$d.id.name = :prop%1$d)",
+                propertyIndex++, propertyType.getSimpleName()));
+        }
+        statement.append(" from BaseObject obj where obj.className = :class");
+
+        try {
+            Query query = queryManager.createQuery(statement.toString(), Query.HQL);
+            query.bindValue(CLASS_LITERAL, getXClassReferenceAsString());
+            propertyIndex = 0;
+            for (String propertyName : propertyTypes.keySet()) {
+                query.bindValue(String.format("prop%d", propertyIndex++), propertyName);
+            }
+
+            List<Object[]> results = query.execute();
+            DocumentReference classReference = stringDocumentReferenceResolver.resolve(getXClassReferenceAsString());
+            Map<DocumentReference, List<BaseObject>> resultMap = new HashMap<>();
+
+            for (Object[] result : results) {
+                BaseObject object = toBaseObject(result, classReference, propertyTypes);
+                resultMap.computeIfAbsent(object.getDocumentReference(), k -> new ArrayList<>()).add(object);
+            }
+
+            return resultMap;
+        } catch (QueryException e) {
+            throw new MigrationException(
+                    String.format("Failed to retrieve a list of [%s] migration XObjects.",
+                            getXClassReferenceAsString()), e);
+        }
+    }
+
+    /**
+     * Build a detached {@link BaseObject} from a row returned by {@link #loadDescriptorsFromProjection()}, so that it
+     * can be given to {@link #createFromBaseObject(BaseObject)}.
+     */
+    private BaseObject toBaseObject(Object[] result, DocumentReference classReference,
+        Map<String, Class<? extends BaseProperty>> propertyTypes)
+    {
+        BaseObject object = new BaseObject();
+        object.setDocumentReference(stringDocumentReferenceResolver.resolve((String) result[0]));
+        object.setXClassReference(classReference);
+        object.setNumber((Integer) result[1]);
+
+        int columnIndex = 2;
+        for (Map.Entry<String, Class<? extends BaseProperty>> propertyType : propertyTypes.entrySet()) {
+            Object value = result[columnIndex++];
+
+            if (value != null) {
+                if (IntegerProperty.class.equals(propertyType.getValue())) {
+                    object.setIntValue(propertyType.getKey(), ((Number) value).intValue());
+                } else if (LargeStringProperty.class.equals(propertyType.getValue())) {
+                    object.setLargeStringValue(propertyType.getKey(), (String) value);
+                } else {
+                    object.setStringValue(propertyType.getKey(), (String) value);
+                }
+            }
+        }
+
+        return object;
     }
 
     /**
@@ -139,4 +335,34 @@ public abstract class AbstractWikiMigrationDescriptorProvider implements Migrati
      * @return the reference to the XClass that needs to be searched as a string
      */
     protected abstract String getXClassReferenceAsString();
+
+    /**
+     * Declare the properties of the XClass that are needed by {@link #createFromBaseObject(BaseObject)}, along with
+     * the type of property used to store them ({@link StringProperty},
+     * {@link LargeStringProperty} or {@link IntegerProperty}). When defined, the descriptors are loaded through
+     * a single query instead of loading the documents holding them.
+     *
+     * @return the properties used to create the descriptors, or null to load the descriptors from the documents
+     * @since 1.2
+     */
+    protected Map<String, Class<? extends BaseProperty>> getXClassPropertyTypes()
+    {
+        return null;
+    }
+
+    /**
+     * @return the types of the properties defined in {@link AbstractMigrationClassDocumentInitializer}, as a mutable
+     * map that implementations of {@link #getXClassPropertyTypes()} can complete with their own properties
+     * @since 1.2
+     */
+    protected Map<String, Class<? extends BaseProperty>> getCommonXClassPropertyTypes()
+    {
+        Map<String, Class<? extends BaseProperty>> propertyTypes = new LinkedHashMap<>();
+        propertyTypes.put(AbstractMigrationClassDocumentInitializer.MIGRATION_NAME_PROPERTY, StringProperty.class);
+        propertyTypes.put(AbstractMigrationClassDocumentInitializer.MIGRATION_DESCRIPTION_PROPERTY,
+            StringProperty.class);
+        propertyTypes.put(AbstractMigrationClassDocumentInitializer.EXTENSION_ID_PROPERTY, StringProperty.class);
+        propertyTypes.put(AbstractMigrationClassDocumentInitializer.EXTENSION_VERSION_PROPERTY, StringProperty.class);
+        return propertyTypes;
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Index of the migration XObjects defined in a wiki, by extension id and by the document holding them. The index
+ * holds detached XObjects rather than descriptors so that each lookup can create its own descriptors, which are
+ * mutable.
+ * <p>
+ * Lookups by extension id can be performed concurrently with updates ; updates are expected to be synchronized by
+ * the caller.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+class MigrationDescriptorIndex
+{
+    /**
+     * The XObjects of each extension, by document : several documents can define the same migration, and removing
+     * one of them must not remove the XObjects of the others.
+     */
+    private final Map<String, Map<DocumentReference, List<BaseObject>>> objectsByExtensionId =
+        new ConcurrentHashMap<>();
+
+    private final Map<DocumentReference, Set<String>> extensionIdsByDocument = new ConcurrentHashMap<>();
+
+    /**
+     * @param extensionId the id of the extension
+     * @return the XObjects defining the migrations of the given extension, in a new list
+     */
+    List<BaseObject> get(String extensionId)
+    {
+        List<BaseObject> objects = new ArrayList<>();
+
+        Map<DocumentReference, List<BaseObject>> documentObjects = objectsByExtensionId.get(extensionId);
+        if (documentObjects != null) {
+            documentObjects.values().forEach(objects::addAll);
+        }
+
+        return objects;
+    }
+
+    /**
+     * Replace the XObjects defined in the given document.
+     *
+     * @param documentReference the document holding the XObjects
+     * @param objects the XObjects currently defined in the document, by extension id
+     */
+    void put(DocumentReference documentReference, Map<String, List<BaseObject>> objects)
+    {
+        remove(documentReference);
+
+        if (!objects.isEmpty()) {
+            extensionIdsByDocument.put(documentReference, new HashSet<>(objects.keySet()));
+            for (Map.Entry<String, List<BaseObject>> extensionObjects : objects.entrySet()) {
+                objectsByExtensionId.computeIfAbsent(extensionObjects.getKey(), k -> new ConcurrentHashMap<>())
+                    .put(documentReference, Collections.unmodifiableList(new ArrayList<>(extensionObjects.getValue())));
+            }
+        }
+    }
+
+    /**
+     * Remove the XObjects defined in the given document.
+     *
+     * @param documentReference the document holding the XObjects
+     */
+    void remove(DocumentReference documentReference)
+    {
+        Set<String> extensionIds = extensionIdsByDocument.remove(documentReference);
+
+        if (extensionIds != null) {
+            for (String extensionId : extensionIds) {
+                Map<DocumentReference, List<BaseObject>> documentObjects = objectsByExtensionId.get(extensionId);
+                if (documentObjects != null) {
+                    documentObjects.remove(documentReference);
+                }
+            }
+        }
+    }
+}
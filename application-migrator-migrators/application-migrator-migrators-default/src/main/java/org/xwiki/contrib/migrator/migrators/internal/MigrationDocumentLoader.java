@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+/**
+ * Loads documents straight from the database for migrations going through large numbers of documents. Such documents
+ * are usually read once and never again, so putting them in the shared document cache would only evict the documents
+ * that the users are working with.
+ * <p>
+ * Saving a loaded document with {@code XWiki#saveDocument} does not add it to the cache either : it only removes any
+ * stale version of the document from it.
+ * <p>
+ * When only the XObjects of a given XClass are needed, {@link #loadXObjects(Collection, String)} reads them for a
+ * whole page of documents with two queries, instead of the several queries needed to load each document.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = MigrationDocumentLoader.class)
+@Singleton
+public class MigrationDocumentLoader
+{
+    /**
+     * The maximum number of values bound to a single {@code in} clause.
+     */
+    private static final int IN_CLAUSE_SIZE = 500;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    @Named("hibernate")
+    private XWikiStoreInterface hibernateStore;
+
+    /**
+     * Load the given document without looking it up in, nor adding it to, the shared document cache. The returned
+     * instance is owned by the caller, which can modify it freely.
+     *
+     * @param documentReference the document to load
+     * @param context the context to use
+     * @return the loaded document, which is new if it does not exist in the database
+     * @throws XWikiException if an error happens
+     */
+    public XWikiDocument load(DocumentReference documentReference, XWikiContext context) throws XWikiException
+    {
+        XWikiDocument document = hibernateStore.loadXWikiDoc(new XWikiDocument(documentReference), context);
+
+        // The original document is needed to compute the changes (and the events) when the document is saved
+        if (document.getOriginalDocument() == null) {
+            document.setOriginalDocument(document.clone());
+        }
+
+        return document;
+    }
+
+    /**
+     * Load the XObjects of the given XClass held by the given documents, along with their properties. The returned
+     * XObjects are detached from their documents : they can be read or modified freely but they are not meant to be
+     * saved.
+     *
+     * @param documents the full names of the documents, in the current wiki
+     * @param className the XClass of the XObjects to load
+     * @return the XObjects of each document holding at least one of them, ordered by number
+     * @throws QueryException if an error happens
+     */
+    public Map<String, List<BaseObject>> loadXObjects(Collection<String> documents, String className)
+        throws QueryException
+    {
+        Map<String, List<BaseObject>> objectsByDocument = new LinkedHashMap<>();
+        List<String> documentList = new ArrayList<>(documents);
+
+        for (int i = 0; i < documentList.size(); i += IN_CLAUSE_SIZE) {
+            Query objectQuery = queryManager.createQuery("select obj from BaseObject obj "
+                + "where obj.name in (:documents) and obj.className = :className order by obj.name, obj.number",
+                Query.HQL);
+            objectQuery.bindValue("documents",
+                documentList.subList(i, Math.min(i + IN_CLAUSE_SIZE, documentList.size())));
+            objectQuery.bindValue("className", className);
+            List<BaseObject> objects = objectQuery.execute();
+
+            Map<Long, BaseObject> objectsById = new HashMap<>();
+            for (BaseObject object : objects) {
+                objectsById.put(object.getId(), object);
+                objectsByDocument.computeIfAbsent(object.getName(), name -> new ArrayList<>()).add(object);
+            }
+
+            loadXProperties(objectsById);
+        }
+
+        return objectsByDocument;
+    }
+
+    private void loadXProperties(Map<Long, BaseObject> objectsById) throws QueryException
+    {
+        List<Long> objectIds = new ArrayList<>(objectsById.keySet());
+
+        for (int i = 0; i < objectIds.size(); i += IN_CLAUSE_SIZE) {
+            Query propertyQuery =
+                queryManager.createQuery("select prop from BaseProperty prop where prop.id.id in (:ids)", Query.HQL);
+            propertyQuery.bindValue("ids", objectIds.subList(i, Math.min(i + IN_CLAUSE_SIZE, objectIds.size())));
+
+            for (Object result : propertyQuery.execute()) {
+                BaseProperty property = (BaseProperty) result;
+                BaseObject object = objectsById.get(property.getId());
+                if (object != null) {
+                    object.safeput(property.getName(), property);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+
+/**
+ * Indexes in the search engine the documents saved by migrations that deferred their indexing.
+ * <p>
+ * While a migration defers the indexing of the documents that it saves, the {@value #EXECUTION_CONTEXT_PROPERTY}
+ * property is set in its execution context (and in the contexts cloned from it). The implementations of this role
+ * are expected to come with a listener that skips the documents saved while this property is set ; these documents
+ * are then given to {@link #index(List)} in batches once the migration is over, see {@link MigrationReindexJob}.
+ * Migrations do not defer their indexing if no implementation is available.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Role
+public interface MigrationIndexer
+{
+    /**
+     * The property of the execution context set while a migration defers the indexing of the documents it saves.
+     */
+    String EXECUTION_CONTEXT_PROPERTY = "migrator.deferredIndexing";
+
+    /**
+     * Queue the given documents for indexing.
+     *
+     * @param documents the documents to index
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the indexer
+     */
+    void index(List<DocumentReference> documents) throws InterruptedException;
+}
@@ -0,0 +1,174 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.job.AbstractJob;
+import org.xwiki.job.DefaultJobStatus;
+import org.xwiki.job.GroupedJob;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobGroupPath;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+
+/**
+ * Reindexes the documents listed in a {@link ReindexSpool}, reading the spool in batches of
+ * {@value #BATCH_SIZE_CONFIGURATION_KEY} documents (in {@code xwiki.properties}) handed to the
+ * {@link MigrationIndexer}.
+ * <p>
+ * The reindex jobs are grouped, so that the spools of several migrations are reindexed one after the other. The spool
+ * is deleted once all its documents have been queued for indexing ; an interrupted job leaves it on disk, so that it
+ * is reindexed again when the wiki restarts.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Named(MigrationReindexJob.JOB_TYPE)
+public class MigrationReindexJob extends AbstractJob<MigrationReindexJobRequest,
+    DefaultJobStatus<MigrationReindexJobRequest>> implements GroupedJob
+{
+    /**
+     * The type of the job.
+     */
+    public static final String JOB_TYPE = "migrator.reindex";
+
+    /**
+     * The configuration property holding the number of documents handed to the indexer at once.
+     */
+    public static final String BATCH_SIZE_CONFIGURATION_KEY = "migrator.reindex.batchSize";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final JobGroupPath GROUP_PATH = new JobGroupPath(Arrays.asList("migrator", "reindex"));
+
+    @Inject
+    @Named("context")
+    private ComponentManager componentManager;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    @Inject
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    @Override
+    public String getType()
+    {
+        return JOB_TYPE;
+    }
+
+    @Override
+    public JobGroupPath getGroupPath()
+    {
+        return GROUP_PATH;
+    }
+
+    @Override
+    protected DefaultJobStatus<MigrationReindexJobRequest> createNewStatus(MigrationReindexJobRequest request)
+    {
+        Job currentJob = this.jobContext.getCurrentJob();
+        JobStatus currentJobStatus = currentJob != null ? currentJob.getStatus() : null;
+        return new DefaultJobStatus<>(JOB_TYPE, request, currentJobStatus, this.observationManager,
+            this.loggerManager);
+    }
+
+    @Override
+    protected void runInternal() throws Exception
+    {
+        File spool = request.getSpool();
+
+        MigrationIndexer migrationIndexer;
+        try {
+            migrationIndexer = componentManager.getInstance(MigrationIndexer.class);
+        } catch (ComponentLookupException e) {
+            // The indexing of the documents has not been deferred by anything, so there is nothing left to do
+            logger.warn("No migration indexer is available anymore, dropping the list of documents to reindex [{}].",
+                spool);
+            delete(spool);
+            return;
+        }
+
+        int batchSize =
+            Math.max(1, configurationSource.getProperty(BATCH_SIZE_CONFIGURATION_KEY, DEFAULT_BATCH_SIZE));
+        long total = countDocuments(spool);
+        logger.info("Reindexing the [{}] documents saved by a migration.", total);
+
+        progressManager.pushLevelProgress((int) ((total + batchSize - 1) / batchSize), this);
+        try (BufferedReader reader = ReindexSpool.openReader(spool)) {
+            List<DocumentReference> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    batch.add(documentReferenceResolver.resolve(line));
+                }
+                if (batch.size() == batchSize) {
+                    indexBatch(migrationIndexer, batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                indexBatch(migrationIndexer, batch);
+            }
+        } finally {
+            progressManager.popLevelProgress(this);
+        }
+
+        logger.info("[{}] documents saved by a migration queued for reindex.", total);
+        delete(spool);
+    }
+
+    private void indexBatch(MigrationIndexer migrationIndexer, List<DocumentReference> batch)
+        throws InterruptedException
+    {
+        progressManager.startStep(this);
+        migrationIndexer.index(batch);
+        batch.clear();
+        progressManager.endStep(this);
+    }
+
+    private long countDocuments(File spool) throws IOException
+    {
+        try (BufferedReader reader = ReindexSpool.openReader(spool)) {
+            return reader.lines().filter(line -> !line.isEmpty()).count();
+        }
+    }
+
+    private void delete(File spool)
+    {
+        if (!spool.delete()) {
+            logger.warn("Failed to delete the list of documents to reindex [{}].", spool);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.xwiki.job.AbstractRequest;
+
+/**
+ * The request of a {@link MigrationReindexJob}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class MigrationReindexJobRequest extends AbstractRequest
+{
+    /**
+     * The request property holding the path of the spool file listing the documents to reindex.
+     */
+    public static final String PROPERTY_SPOOL = "migrator.reindex.spool";
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Builds a new request reindexing the documents listed in the given spool file.
+     *
+     * @param spool the spool file, see {@link ReindexSpool}
+     */
+    public MigrationReindexJobRequest(File spool)
+    {
+        setId(Arrays.asList("migrator", "reindex", spool.getName()));
+        setProperty(PROPERTY_SPOOL, spool.getAbsolutePath());
+    }
+
+    /**
+     * @return the spool file listing the documents to reindex
+     */
+    public File getSpool()
+    {
+        return new File((String) getProperty(PROPERTY_SPOOL));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Reindexes, once the wiki is ready, the documents saved by the migrations that deferred their indexing and were
+ * interrupted by a restart before their documents could be reindexed, see {@link MigrationReindexer#recover()}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+@Named(MigrationReindexRecoveryListener.LISTENER_NAME)
+public class MigrationReindexRecoveryListener extends AbstractEventListener
+{
+    /**
+     * The listener name.
+     */
+    public static final String LISTENER_NAME = "MigrationReindexRecoveryListener";
+
+    @Inject
+    private MigrationReindexer migrationReindexer;
+
+    /**
+     * Build a new {@link MigrationReindexRecoveryListener}.
+     */
+    public MigrationReindexRecoveryListener()
+    {
+        super(LISTENER_NAME, new ApplicationReadyEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        migrationReindexer.recover();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.environment.Environment;
+import org.xwiki.job.JobException;
+import org.xwiki.job.JobExecutor;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+/**
+ * Reindexes in the search engine the documents saved by migrations that deferred their indexing.
+ * <p>
+ * Such migrations save their documents while the {@link MigrationIndexer#EXECUTION_CONTEXT_PROPERTY} property is set,
+ * so the search index is not updated one document at a time while they run. Instead, the saved documents are
+ * collected in a {@link ReindexSpool}, which is submitted once the migration is over : the whole spool is then
+ * reindexed in batches by a single {@link MigrationReindexJob}.
+ * <p>
+ * The spools are kept in the permanent directory of the wiki until their reindex is over, so that the spools left by
+ * a restart can be reindexed again through {@link #recover()}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = MigrationReindexer.class)
+@Singleton
+public class MigrationReindexer
+{
+    private static final String SPOOL_PREFIX = "reindex-";
+
+    private static final String SPOOL_SUFFIX = ".txt";
+
+    @Inject
+    @Named("context")
+    private ComponentManager componentManager;
+
+    @Inject
+    private JobExecutor jobExecutor;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * @return true if the indexing of the saved documents can be deferred, that is if a {@link MigrationIndexer} is
+     * available
+     */
+    public boolean isAvailable()
+    {
+        return componentManager.hasComponent(MigrationIndexer.class);
+    }
+
+    /**
+     * @return a new empty spool, stored in the permanent directory of the wiki
+     * @throws IOException if the spool file cannot be created
+     */
+    public ReindexSpool createSpool() throws IOException
+    {
+        File directory = getSpoolDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format("Failed to create the directory [%s].", directory));
+        }
+
+        return new ReindexSpool(File.createTempFile(SPOOL_PREFIX, SPOOL_SUFFIX, directory), serializer);
+    }
+
+    /**
+     * Close the given spool and reindex its documents in a background job. The spool is deleted once the reindex is
+     * over.
+     *
+     * @param spool the spool to submit
+     */
+    public void submit(ReindexSpool spool)
+    {
+        try {
+            spool.close();
+        } catch (IOException e) {
+            // Whatever has been flushed to the spool is still reindexed
+            logger.error("Failed to close the list of documents to reindex [{}].", spool.getFile(), e);
+        }
+
+        if (spool.size() == 0) {
+            delete(spool.getFile());
+            return;
+        }
+
+        logger.info("Reindexing the [{}] documents saved by the migration in the background.", spool.size());
+        submit(spool.getFile());
+    }
+
+    /**
+     * Reindex the spools left over by migrations or reindex jobs interrupted by a restart of the wiki.
+     */
+    public void recover()
+    {
+        File[] spools = getSpoolDirectory().listFiles(
+            (directory, name) -> name.startsWith(SPOOL_PREFIX) && name.endsWith(SPOOL_SUFFIX));
+        if (spools == null || spools.length == 0) {
+            return;
+        }
+
+        logger.info("Reindexing the documents saved by [{}] interrupted migrations.", spools.length);
+        Arrays.sort(spools);
+        for (File spool : spools) {
+            submit(spool);
+        }
+    }
+
+    private void submit(File spool)
+    {
+        try {
+            jobExecutor.execute(MigrationReindexJob.JOB_TYPE, new MigrationReindexJobRequest(spool));
+        } catch (JobException e) {
+            // The spool is kept so that it is reindexed on the next restart
+            logger.error("Failed to start the reindex of the documents listed in [{}].", spool, e);
+        }
+    }
+
+    private File getSpoolDirectory()
+    {
+        return new File(environment.getPermanentDirectory(), "migrator/reindex");
+    }
+
+    private void delete(File spool)
+    {
+        if (!spool.delete()) {
+            logger.warn("Failed to delete the list of documents to reindex [{}].", spool);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.contrib.migrator.MigrationController;
+
+/**
+ * Limits the rate at which migrations write documents, so that they can run while the wiki is being used.
+ * <p>
+ * The target rate is set through the {@value #RATE_CONFIGURATION_KEY} property of {@code xwiki.properties}, in
+ * documents per second ; migrations are not throttled if it is not set. If the {@value #LATENCY_CONFIGURATION_KEY}
+ * property is set as well, the throttle is adaptive : the rate is halved whenever the average save latency goes
+ * above this threshold (in milliseconds), then slowly brought back to the target once the database recovers.
+ * <p>
+ * The throttle is shared by all the migrations (and all their workers), as it protects the same database. Permits
+ * should be acquired outside of any store transaction, so that a throttled migration never waits while holding a
+ * database connection and row locks.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component(roles = MigrationThrottle.class)
+@Singleton
+public class MigrationThrottle implements Initializable
+{
+    /**
+     * The configuration property holding the target number of documents written per second.
+     */
+    public static final String RATE_CONFIGURATION_KEY = "migrator.throttle.documentsPerSecond";
+
+    /**
+     * The configuration property holding the save latency (in milliseconds) above which the rate is reduced.
+     */
+    public static final String LATENCY_CONFIGURATION_KEY = "migrator.throttle.latencyThreshold";
+
+    /**
+     * The rate is never reduced under this number of documents per second.
+     */
+    private static final double MINIMUM_RATE = 0.5;
+
+    /**
+     * The weight of the last save in the average save latency.
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    /**
+     * The minimum time between two adjustments of the rate.
+     */
+    private static final long ADJUSTMENT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The maximum time spent waiting before checking again whether the migration has been canceled.
+     */
+    private static final long CANCEL_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    @Inject
+    private MigrationController migrationController;
+
+    @Inject
+    private Logger logger;
+
+    private double targetRate;
+
+    private long latencyThreshold;
+
+    private double currentRate;
+
+    private double averageLatency;
+
+    private long nextSlot;
+
+    private long lastAdjustment;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        targetRate = configurationSource.getProperty(RATE_CONFIGURATION_KEY, 0D);
+        latencyThreshold = configurationSource.getProperty(LATENCY_CONFIGURATION_KEY, 0L);
+        currentRate = targetRate;
+    }
+
+    /**
+     * @return true if the migrations are throttled
+     */
+    public boolean isEnabled()
+    {
+        return targetRate > 0;
+    }
+
+    /**
+     * Wait until the next document can be written according to the current rate.
+     *
+     * @see #acquire(int)
+     */
+    public void acquire()
+    {
+        acquire(1);
+    }
+
+    /**
+     * Wait until the given number of documents can be written according to the current rate, for instance before
+     * opening the transaction saving a batch of documents.
+     * <p>
+     * The wait stops early when the migration running in the current thread is canceled (or the thread interrupted),
+     * so that the migration does not wait for the end of its slot to stop : the caller then writes its documents and
+     * stops at its next cancel check, as it would without throttling.
+     *
+     * @param permits the number of documents to write
+     */
+    public void acquire(int permits)
+    {
+        if (!isEnabled() || permits <= 0) {
+            return;
+        }
+
+        long deadline;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextSlot);
+            nextSlot = slot + (long) (permits * TimeUnit.SECONDS.toNanos(1) / currentRate);
+            deadline = slot;
+        }
+
+        // Sleep in slices so that a canceled migration does not have to wait for the end of its slot
+        long waitTime;
+        while ((waitTime = deadline - System.nanoTime()) > 0) {
+            if (migrationController.isCanceled()) {
+                return;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(waitTime, CANCEL_CHECK_INTERVAL));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Report the time spent writing a document, used to adapt the rate to the load of the database. The time should
+     * include the commit of the transaction holding the write.
+     *
+     * @param latency the time spent saving the document, in milliseconds
+     */
+    public synchronized void recordSave(long latency)
+    {
+        if (!isEnabled() || latencyThreshold <= 0) {
+            return;
+        }
+
+        averageLatency = (averageLatency == 0) ? latency
+            : LATENCY_SMOOTHING * latency + (1 - LATENCY_SMOOTHING) * averageLatency;
+
+        long now = System.nanoTime();
+        if (now - lastAdjustment < ADJUSTMENT_INTERVAL) {
+            return;
+        }
+
+        // Multiplicative decrease when the database is struggling, additive increase once it has recovered
+        if (averageLatency > latencyThreshold && currentRate > MINIMUM_RATE) {
+            currentRate = Math.max(MINIMUM_RATE, currentRate / 2);
+            lastAdjustment = now;
+            logger.info("Average save latency of [{}] ms, slowing migrations down to [{}] documents per second.",
+                Math.round(averageLatency), currentRate);
+        } else if (averageLatency < latencyThreshold / 2D && currentRate < targetRate) {
+            currentRate = Math.min(targetRate, currentRate + targetRate / 10);
+            lastAdjustment = now;
+            logger.debug("Average save latency of [{}] ms, speeding migrations up to [{}] documents per second.",
+                Math.round(averageLatency), currentRate);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+/**
+ * A list of the documents saved by a migration, kept on disk (one serialized reference per line) so that migrations
+ * modifying millions of documents do not have to hold their references in memory.
+ * <p>
+ * Spools are created by the {@link MigrationReindexer} in the permanent directory of the wiki and consumed by a
+ * {@link MigrationReindexJob}. Each reference is flushed to the file as soon as it is added, so that the documents
+ * saved before a restart are still reindexed when the spool is recovered.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class ReindexSpool implements Closeable
+{
+    private final File file;
+
+    private final EntityReferenceSerializer<String> serializer;
+
+    private Writer writer;
+
+    private long size;
+
+    ReindexSpool(File file, EntityReferenceSerializer<String> serializer) throws IOException
+    {
+        this.file = file;
+        this.serializer = serializer;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Add a document to the spool. This method can be called concurrently by the workers of a migration.
+     *
+     * @param documentReference the reference of the saved document
+     * @throws IOException if the reference cannot be written
+     */
+    public synchronized void add(DocumentReference documentReference) throws IOException
+    {
+        writer.write(serializer.serialize(documentReference));
+        writer.write('\n');
+        writer.flush();
+        size++;
+    }
+
+    /**
+     * @return the number of documents added to the spool
+     */
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * @param file a spool file
+     * @return a reader over the serialized references of the spool, one per line
+     * @throws IOException if the spool cannot be read
+     */
+    static BufferedReader openReader(File file) throws IOException
+    {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the file holding the spool
+     */
+    File getFile()
+    {
+        return file;
+    }
+}
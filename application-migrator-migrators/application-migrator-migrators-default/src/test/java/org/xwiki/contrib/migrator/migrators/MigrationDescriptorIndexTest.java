@@ -0,0 +1,137 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MigrationDescriptorIndex}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class MigrationDescriptorIndexTest
+{
+    private static final String EXTENSION_ID = "dummy-extension";
+
+    private static final String OTHER_EXTENSION_ID = "other-extension";
+
+    private final DocumentReference documentA = new DocumentReference("xwiki", "Migrations", "A");
+
+    private final DocumentReference documentB = new DocumentReference("xwiki", "Migrations", "B");
+
+    private MigrationDescriptorIndex descriptorIndex;
+
+    private BaseObject objectA;
+
+    private BaseObject objectB;
+
+    @Before
+    public void setUp()
+    {
+        descriptorIndex = new MigrationDescriptorIndex();
+        objectA = createObject("A");
+        objectB = createObject("B");
+    }
+
+    @Test
+    public void getUnknownExtension()
+    {
+        assertTrue(descriptorIndex.get(EXTENSION_ID).isEmpty());
+    }
+
+    @Test
+    public void putAndGet()
+    {
+        BaseObject otherObject = createObject("other");
+        Map<String, List<BaseObject>> objects = new HashMap<>();
+        objects.put(EXTENSION_ID, Collections.singletonList(objectA));
+        objects.put(OTHER_EXTENSION_ID, Collections.singletonList(otherObject));
+
+        descriptorIndex.put(documentA, objects);
+        descriptorIndex.put(documentB, Collections.singletonMap(EXTENSION_ID, Collections.singletonList(objectB)));
+
+        assertEquals(2, descriptorIndex.get(EXTENSION_ID).size());
+        assertTrue(descriptorIndex.get(EXTENSION_ID).containsAll(Arrays.asList(objectA, objectB)));
+        assertEquals(Collections.singletonList(otherObject), descriptorIndex.get(OTHER_EXTENSION_ID));
+    }
+
+    @Test
+    public void putReplacesTheObjectsOfTheDocument()
+    {
+        descriptorIndex.put(documentA, Collections.singletonMap(EXTENSION_ID, Collections.singletonList(objectA)));
+        descriptorIndex.put(documentA,
+            Collections.singletonMap(OTHER_EXTENSION_ID, Collections.singletonList(objectB)));
+
+        assertTrue(descriptorIndex.get(EXTENSION_ID).isEmpty());
+        assertEquals(Collections.singletonList(objectB), descriptorIndex.get(OTHER_EXTENSION_ID));
+
+        descriptorIndex.put(documentA, Collections.emptyMap());
+
+        assertTrue(descriptorIndex.get(OTHER_EXTENSION_ID).isEmpty());
+    }
+
+    @Test
+    public void removeKeepsTheObjectsOfOtherDocuments()
+    {
+        // Both documents define the same migration
+        descriptorIndex.put(documentA, Collections.singletonMap(EXTENSION_ID, Collections.singletonList(objectA)));
+        descriptorIndex.put(documentB, Collections.singletonMap(EXTENSION_ID, Collections.singletonList(objectB)));
+
+        descriptorIndex.remove(documentA);
+
+        assertEquals(Collections.singletonList(objectB), descriptorIndex.get(EXTENSION_ID));
+
+        descriptorIndex.remove(documentB);
+
+        assertTrue(descriptorIndex.get(EXTENSION_ID).isEmpty());
+    }
+
+    @Test
+    public void getReturnsACopy()
+    {
+        descriptorIndex.put(documentA, Collections.singletonMap(EXTENSION_ID, Collections.singletonList(objectA)));
+
+        descriptorIndex.get(EXTENSION_ID).clear();
+
+        assertEquals(Collections.singletonList(objectA), descriptorIndex.get(EXTENSION_ID));
+    }
+
+    private BaseObject createObject(String migrationName)
+    {
+        // Give each XObject its own values, as XObjects holding the same values are equal
+        BaseObject object = new BaseObject();
+        object.setStringValue(AbstractMigrationClassDocumentInitializer.MIGRATION_NAME_PROPERTY, migrationName);
+        return object;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.contrib.migrator.MigrationController;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link MigrationThrottle}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class MigrationThrottleTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<MigrationThrottle> mocker =
+        new MockitoComponentMockingRule<>(MigrationThrottle.class);
+
+    private ConfigurationSource configurationSource;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        configurationSource = mocker.registerMockComponent(ConfigurationSource.class, "xwikiproperties");
+        when(configurationSource.getProperty(MigrationThrottle.RATE_CONFIGURATION_KEY, 0D)).thenReturn(0D);
+        when(configurationSource.getProperty(MigrationThrottle.LATENCY_CONFIGURATION_KEY, 0L)).thenReturn(0L);
+    }
+
+    @Test
+    public void acquireWhenDisabled() throws Exception
+    {
+        assertFalse(mocker.getComponentUnderTest().isEnabled());
+        long startTime = System.currentTimeMillis();
+        mocker.getComponentUnderTest().acquire(1000);
+
+        assertTrue(System.currentTimeMillis() - startTime < 1000);
+
+        verifyZeroInteractions(mocker.<MigrationController>getInstance(MigrationController.class));
+    }
+
+    @Test
+    public void acquireReservesAllThePermits() throws Exception
+    {
+        when(configurationSource.getProperty(MigrationThrottle.RATE_CONFIGURATION_KEY, 0D)).thenReturn(10D);
+        MigrationThrottle throttle = mocker.getComponentUnderTest();
+
+        // The first batch gets the current slot, the next one waits for the 5 documents of the first batch
+        long startTime = System.currentTimeMillis();
+        throttle.acquire(5);
+        throttle.acquire();
+
+        assertTrue(System.currentTimeMillis() - startTime >= 400);
+    }
+
+    @Test
+    public void acquireStopsWaitingWhenCanceled() throws Exception
+    {
+        when(configurationSource.getProperty(MigrationThrottle.RATE_CONFIGURATION_KEY, 0D)).thenReturn(1D);
+        MigrationController migrationController = mocker.getInstance(MigrationController.class);
+        when(migrationController.isCanceled()).thenReturn(true);
+        MigrationThrottle throttle = mocker.getComponentUnderTest();
+
+        long startTime = System.currentTimeMillis();
+        throttle.acquire(10);
+        throttle.acquire();
+
+        assertTrue(System.currentTimeMillis() - startTime < 5000);
+    }
+}
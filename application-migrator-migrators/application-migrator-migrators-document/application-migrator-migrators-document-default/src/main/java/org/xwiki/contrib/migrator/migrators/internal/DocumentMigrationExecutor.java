@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.contrib.migrator.MigrationEstimate;
 import org.xwiki.contrib.migrator.MigrationException;
 import org.xwiki.contrib.migrator.MigrationExecutor;
 import org.xwiki.contrib.migrator.MigrationStatus;
@@ -50,6 +51,9 @@ public class DocumentMigrationExecutor implements MigrationExecutor<DocumentMigr
     @Inject
     private Logger logger;
 
+    @Inject
+    private MigrationThrottle migrationThrottle;
+
     // As we're instantiating the executor per lookup (and not as a singleton), we can have the freedom to
     // store private attributes without them interfering with other executions.
 
@@ -76,9 +80,12 @@ public class DocumentMigrationExecutor implements MigrationExecutor<DocumentMigr
                 && xwiki.exists(migrationParameters.getDocumentReference(), xWikiContext)) {
             logger.info("Removing document [{}] ...", migrationParameters.getDocumentReference());
             try {
+                migrationThrottle.acquire();
+                long startTime = System.currentTimeMillis();
                 xwiki.deleteDocument(
                         xwiki.getDocument(
                                 migrationParameters.getDocumentReference(), xWikiContext), false, xWikiContext);
+                migrationThrottle.recordSave(System.currentTimeMillis() - startTime);
             } catch (XWikiException e) {
                 throw new MigrationException(
                         String.format("Failed to remove the old XClass [%s]",
@@ -88,4 +95,17 @@ public class DocumentMigrationExecutor implements MigrationExecutor<DocumentMigr
 
         return MigrationStatus.SUCCESS;
     }
+
+    @Override
+    public MigrationEstimate estimate(DocumentMigrationDescriptor migrationDescriptor)
+    {
+        DocumentMigrationParameters parameters =
+                (DocumentMigrationParameters) migrationDescriptor.getMigrationParameters();
+        XWikiContext context = xWikiContextProvider.get();
+
+        // At most one document is removed, which is not worth sampling
+        boolean willDelete = parameters.isDeleteDocument()
+                && context.getWiki().exists(parameters.getDocumentReference(), context);
+        return new MigrationEstimate(willDelete ? 1 : 0, 0, 0, 0);
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.migrator.MigrationDescriptorProvider;
+import org.xwiki.contrib.migrator.migrators.AbstractWikiMigrationDescriptorListener;
+import org.xwiki.contrib.migrator.migrators.AbstractWikiMigrationDescriptorProvider;
+
+/**
+ * Keeps the index of the {@link WikiDocumentMigrationDescriptorProvider} up to date.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+@Named(WikiDocumentMigrationDescriptorListener.LISTENER_NAME)
+public class WikiDocumentMigrationDescriptorListener extends AbstractWikiMigrationDescriptorListener
+{
+    /**
+     * The listener name.
+     */
+    public static final String LISTENER_NAME = "WikiDocumentMigrationDescriptorListener";
+
+    @Inject
+    @Named(WikiDocumentMigrationDescriptorProvider.COMPONENT_NAME)
+    private Provider<MigrationDescriptorProvider> migrationDescriptorProvider;
+
+    /**
+     * Build a new {@link WikiDocumentMigrationDescriptorListener}.
+     */
+    public WikiDocumentMigrationDescriptorListener()
+    {
+        super(LISTENER_NAME, DocumentMigrationClassDocumentInitializer.CLASS_REFERENCE);
+    }
+
+    @Override
+    protected AbstractWikiMigrationDescriptorProvider getDescriptorProvider()
+    {
+        return (AbstractWikiMigrationDescriptorProvider) migrationDescriptorProvider.get();
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.xwiki.contrib.migrator.migrators.internal;
 
+import java.util.Map;
+
 import javax.inject.Named;
 import javax.inject.Singleton;
 
@@ -27,6 +29,9 @@ import org.xwiki.contrib.migrator.migrators.AbstractWikiMigrationDescriptorProvi
 import org.xwiki.extension.ExtensionId;
 
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.IntegerProperty;
+import com.xpn.xwiki.objects.StringProperty;
 
 /**
  * Provides {@link DocumentMigrationDescriptor} extracted from wiki pages through the XClass defined in
@@ -70,4 +75,13 @@ public class WikiDocumentMigrationDescriptorProvider extends AbstractWikiMigrati
     {
         return DocumentMigrationClassDocumentInitializer.CLASS_REFERENCE;
     }
+
+    @Override
+    protected Map<String, Class<? extends BaseProperty>> getXClassPropertyTypes()
+    {
+        Map<String, Class<? extends BaseProperty>> propertyTypes = getCommonXClassPropertyTypes();
+        propertyTypes.put(DocumentMigrationClassDocumentInitializer.DOCUMENT_REFERENCE_PROPERTY, StringProperty.class);
+        propertyTypes.put(DocumentMigrationClassDocumentInitializer.DELETE_DOCUMENT_PROPERTY, IntegerProperty.class);
+        return propertyTypes;
+    }
 }
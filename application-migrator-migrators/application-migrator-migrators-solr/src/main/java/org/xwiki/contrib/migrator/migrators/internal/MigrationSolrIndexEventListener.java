@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.List;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Wraps the listener updating the Solr index when documents are saved, in order to skip the documents saved by
+ * migrations that defer their indexing (see {@link MigrationIndexer#EXECUTION_CONTEXT_PROPERTY}) : these documents
+ * are reindexed in batches once the migration is over by {@link SolrMigrationIndexer}. Every other event is passed
+ * to the wrapped listener.
+ * <p>
+ * The wrapper only relies on the {@link EventListener} API, so that it does not depend on the implementation of the
+ * Solr listener ; it is installed in place of the Solr listener by {@link MigrationSolrIndexListenerInstaller}.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class MigrationSolrIndexEventListener implements EventListener
+{
+    private final EventListener solrListener;
+
+    private final Execution execution;
+
+    /**
+     * @param solrListener the listener updating the Solr index
+     * @param execution the execution used to check whether the current thread defers the indexing of its documents
+     */
+    public MigrationSolrIndexEventListener(EventListener solrListener, Execution execution)
+    {
+        this.solrListener = solrListener;
+        this.execution = execution;
+    }
+
+    /**
+     * @return the wrapped listener updating the Solr index
+     */
+    public EventListener getSolrListener()
+    {
+        return solrListener;
+    }
+
+    @Override
+    public String getName()
+    {
+        // Same name as the wrapped listener, so that it replaces it in the observation manager
+        return solrListener.getName();
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return solrListener.getEvents();
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        ExecutionContext context = execution.getContext();
+        if (context != null && context.hasProperty(MigrationIndexer.EXECUTION_CONTEXT_PROPERTY)) {
+            return;
+        }
+
+        solrListener.onEvent(event, source, data);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.ApplicationStartedEvent;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Installs, once the application is started, the {@link MigrationSolrIndexEventListener} in place of the listener
+ * updating the Solr index, so that the documents saved by migrations deferring their indexing are not indexed twice.
+ * <p>
+ * The Solr listener is wrapped in the observation manager instead of being overridden as a component, so that the
+ * migrator does not depend on its implementation. This can be disabled by setting the
+ * {@value #ENABLED_CONFIGURATION_KEY} property of {@code xwiki.properties} to {@code false} : the documents saved by
+ * migrations deferring their indexing are then indexed when they are saved, and again once the migration is over.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+@Named(MigrationSolrIndexListenerInstaller.LISTENER_NAME)
+public class MigrationSolrIndexListenerInstaller extends AbstractEventListener
+{
+    /**
+     * The listener name.
+     */
+    public static final String LISTENER_NAME = "MigrationSolrIndexListenerInstaller";
+
+    /**
+     * The configuration property telling whether the Solr listener should skip the documents saved by migrations
+     * deferring their indexing.
+     */
+    public static final String ENABLED_CONFIGURATION_KEY = "migrator.reindex.solr.skipDeferredDocuments";
+
+    /**
+     * The name of the listener updating the Solr index.
+     */
+    public static final String SOLR_LISTENER_NAME = "solr.update";
+
+    @Inject
+    private Provider<ObservationManager> observationManagerProvider;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Build a new {@link MigrationSolrIndexListenerInstaller}.
+     */
+    public MigrationSolrIndexListenerInstaller()
+    {
+        super(LISTENER_NAME, new ApplicationStartedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (!configurationSource.getProperty(ENABLED_CONFIGURATION_KEY, true)) {
+            logger.info("The documents saved by migrations deferring their indexing will also be indexed when saved.");
+            return;
+        }
+
+        ObservationManager observationManager = observationManagerProvider.get();
+        EventListener solrListener = observationManager.getListener(SOLR_LISTENER_NAME);
+        if (solrListener == null) {
+            logger.warn("No [{}] listener found, the documents saved by migrations deferring their indexing may be "
+                + "indexed when saved and again once the migration is over.", SOLR_LISTENER_NAME);
+        } else if (!(solrListener instanceof MigrationSolrIndexEventListener)) {
+            // Removed first, as the observation manager warns when a listener replaces another one with the same name
+            observationManager.removeListener(SOLR_LISTENER_NAME);
+            observationManager.addListener(new MigrationSolrIndexEventListener(solrListener, execution));
+        }
+    }
+}
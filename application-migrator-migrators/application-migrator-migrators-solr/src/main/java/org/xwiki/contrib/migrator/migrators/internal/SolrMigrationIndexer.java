@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.search.solr.internal.api.SolrIndexer;
+
+/**
+ * Queues the documents saved by migrations in the Solr indexer. Before each document, the indexer waits for the
+ * Solr indexer queue to go under {@value #QUEUE_SIZE_CONFIGURATION_KEY} (in {@code xwiki.properties}), so that large
+ * migrations do not flood it.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+@Component
+@Singleton
+public class SolrMigrationIndexer implements MigrationIndexer, Initializable
+{
+    /**
+     * The configuration property holding the number of documents waiting in the Solr indexer queue above which the
+     * reindex is paused.
+     */
+    public static final String QUEUE_SIZE_CONFIGURATION_KEY = "migrator.reindex.maxQueueSize";
+
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    /**
+     * The time waited before checking the indexer queue again, in milliseconds.
+     */
+    private static final long QUEUE_POLL_INTERVAL = 500;
+
+    @Inject
+    private Provider<SolrIndexer> solrIndexerProvider;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    private int maxQueueSize;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        maxQueueSize = configurationSource.getProperty(QUEUE_SIZE_CONFIGURATION_KEY, DEFAULT_QUEUE_SIZE);
+    }
+
+    @Override
+    public void index(List<DocumentReference> documents) throws InterruptedException
+    {
+        SolrIndexer solrIndexer = solrIndexerProvider.get();
+        for (DocumentReference document : documents) {
+            while (solrIndexer.getQueueSize() > maxQueueSize) {
+                TimeUnit.MILLISECONDS.sleep(QUEUE_POLL_INTERVAL);
+            }
+            solrIndexer.index(document, false);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.migrator.migrators.internal;
+
+import java.util.Collections;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.ApplicationStartedEvent;
+import org.xwiki.observation.event.Event;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link MigrationSolrIndexListenerInstaller} and the {@link MigrationSolrIndexEventListener} that it
+ * installs.
+ *
+ * @version $Id$
+ * @since 1.2
+ */
+public class MigrationSolrIndexListenerInstallerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<MigrationSolrIndexListenerInstaller> mocker =
+        new MockitoComponentMockingRule<>(MigrationSolrIndexListenerInstaller.class);
+
+    private ConfigurationSource configurationSource;
+
+    private ObservationManager observationManager;
+
+    private EventListener solrListener;
+
+    private ExecutionContext executionContext;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        configurationSource = mocker.registerMockComponent(ConfigurationSource.class, "xwikiproperties");
+        when(configurationSource.getProperty(MigrationSolrIndexListenerInstaller.ENABLED_CONFIGURATION_KEY, true))
+            .thenReturn(true);
+
+        observationManager = mock(ObservationManager.class);
+        Provider<ObservationManager> observationManagerProvider =
+            mocker.getInstance(new DefaultParameterizedType(null, Provider.class, ObservationManager.class));
+        when(observationManagerProvider.get()).thenReturn(observationManager);
+
+        solrListener = mock(EventListener.class);
+        when(solrListener.getName()).thenReturn(MigrationSolrIndexListenerInstaller.SOLR_LISTENER_NAME);
+        when(solrListener.getEvents()).thenReturn(Collections.singletonList(new DocumentUpdatedEvent()));
+        when(observationManager.getListener(MigrationSolrIndexListenerInstaller.SOLR_LISTENER_NAME))
+            .thenReturn(solrListener);
+
+        executionContext = new ExecutionContext();
+        Execution execution = mocker.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(executionContext);
+    }
+
+    @Test
+    public void installInPlaceOfTheSolrListener() throws Exception
+    {
+        MigrationSolrIndexEventListener listener = install();
+
+        // The wrapper is the listener now registered under the name of the Solr listener
+        verify(observationManager).removeListener(MigrationSolrIndexListenerInstaller.SOLR_LISTENER_NAME);
+        assertSame(solrListener, listener.getSolrListener());
+        assertEquals(MigrationSolrIndexListenerInstaller.SOLR_LISTENER_NAME, listener.getName());
+        assertEquals(solrListener.getEvents(), listener.getEvents());
+    }
+
+    @Test
+    public void skipDocumentsWithDeferredIndexing() throws Exception
+    {
+        MigrationSolrIndexEventListener listener = install();
+        Event event = new DocumentUpdatedEvent();
+
+        listener.onEvent(event, null, null);
+        verify(solrListener).onEvent(event, null, null);
+
+        executionContext.setProperty(MigrationIndexer.EXECUTION_CONTEXT_PROPERTY, Boolean.TRUE);
+        Event deferredEvent = new DocumentUpdatedEvent();
+        listener.onEvent(deferredEvent, null, null);
+        verify(solrListener, never()).onEvent(deferredEvent, null, null);
+    }
+
+    @Test
+    public void doNotInstallWhenDisabled() throws Exception
+    {
+        when(configurationSource.getProperty(MigrationSolrIndexListenerInstaller.ENABLED_CONFIGURATION_KEY, true))
+            .thenReturn(false);
+
+        mocker.getComponentUnderTest().onEvent(new ApplicationStartedEvent(), null, null);
+
+        verify(observationManager, never()).removeListener(anyString());
+        verify(observationManager, never()).addListener(any(EventListener.class));
+    }
+
+    @Test
+    public void doNotInstallWithoutSolrListener() throws Exception
+    {
+        when(observationManager.getListener(MigrationSolrIndexListenerInstaller.SOLR_LISTENER_NAME)).thenReturn(null);
+
+        mocker.getComponentUnderTest().onEvent(new ApplicationStartedEvent(), null, null);
+
+        verify(observationManager, never()).addListener(any(EventListener.class));
+    }
+
+    private MigrationSolrIndexEventListener install() throws Exception
+    {
+        mocker.getComponentUnderTest().onEvent(new ApplicationStartedEvent(), null, null);
+
+        ArgumentCaptor<EventListener> listenerCaptor = ArgumentCaptor.forClass(EventListener.class);
+        verify(observationManager).addListener(listenerCaptor.capture());
+        return (MigrationSolrIndexEventListener) listenerCaptor.getValue();
+    }
+}
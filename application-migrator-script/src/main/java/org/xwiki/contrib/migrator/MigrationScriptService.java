@@ -19,10 +19,12 @@
  */
 package org.xwiki.contrib.migrator;
 
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
@@ -46,7 +48,10 @@ public class MigrationScriptService implements ScriptService
     private MigrationManager migrationManager;
 
     @Inject
-    private MigrationHistoryStore migrationHistoryStore;
+    private Provider<MigrationHistoryStore> migrationHistoryStoreProvider;
+
+    @Inject
+    private MigrationController migrationController;
 
     /**
      * @return the {@link MigrationManager}
@@ -61,7 +66,17 @@ public class MigrationScriptService implements ScriptService
      */
     public MigrationHistoryStore getStore()
     {
-        return migrationHistoryStore;
+        return migrationHistoryStoreProvider.get();
+    }
+
+    /**
+     * @return the {@link MigrationController}, allowing to cancel, pause and resume the running migrations from the
+     * control id found in the request of their job
+     * @since 1.2
+     */
+    public MigrationController getController()
+    {
+        return migrationController;
     }
 
     /**
@@ -92,4 +107,37 @@ public class MigrationScriptService implements ScriptService
     {
         return migrationManager.getAvailableMigrations(new ExtensionId(extensionId, extensionVersion));
     }
+
+    /**
+     * Helper for {@link MigrationManager#estimateMigrationsForVersion(ExtensionId)} allowing to estimate migrations
+     * without actually needing to instantiate a new {@link ExtensionId}.
+     *
+     * @param extensionId the ID of the extension to check
+     * @param extensionVersion the version of the extension to check
+     * @return the projected cost of each available migration for the given extension
+     * @throws MigrationException if an error happens
+     * @since 1.2
+     */
+    public Map<AbstractMigrationDescriptor, MigrationEstimate> estimateMigrations(String extensionId,
+        String extensionVersion) throws MigrationException
+    {
+        return migrationManager.estimateMigrationsForVersion(new ExtensionId(extensionId, extensionVersion));
+    }
+
+    /**
+     * Helper for {@link MigrationManager#applyMigrationsOnFarm(ExtensionId, int)} allowing to migrate every wiki
+     * without actually needing to instantiate a new {@link ExtensionId}.
+     *
+     * @param extensionId the ID of the extension to migrate
+     * @param extensionVersion the version of the extension to migrate
+     * @param parallelism the maximum number of wikis migrated at the same time
+     * @return the aggregated status of the migrations of every wiki
+     * @throws MigrationException if an error happens
+     * @since 1.2
+     */
+    public FarmMigrationStatus applyMigrationsOnFarm(String extensionId, String extensionVersion, int parallelism)
+        throws MigrationException
+    {
+        return migrationManager.applyMigrationsOnFarm(new ExtensionId(extensionId, extensionVersion), parallelism);
+    }
 }